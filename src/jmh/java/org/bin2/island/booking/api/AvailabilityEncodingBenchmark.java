@@ -0,0 +1,85 @@
+package org.bin2.island.booking.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.bin2.island.booking.service.AvailabilityIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+
+/**
+ * json encoding of the available dates: jackson databind on the list of dates as the response used to be encoded,
+ * and the streaming encoding of {@link AvailabilityResponseCache} (etag included) in each {@link AvailabilityFormat}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvailabilityEncodingBenchmark {
+
+    @Param({"30", "365"})
+    int windowDays;
+
+    @Param({"0.1", "0.9"})
+    double density;
+
+    private ObjectMapper objectMapper;
+    private AvailabilityResponseCache responseCache;
+    private AvailabilityIndex index;
+    private LocalDate from;
+    private LocalDate to;
+    private List<LocalDate> availableDates;
+
+    @Setup
+    public void setup() {
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        responseCache = new AvailabilityResponseCache(null, objectMapper, 1);
+        from = LocalDate.now().plusDays(1);
+        to = from.plusDays(windowDays);
+        Random random = new Random(42);
+        AvailabilityIndex.Builder builder = AvailabilityIndex.builder(from, to);
+        from.datesUntil(to).filter(d -> random.nextDouble() < density).forEach(builder::book);
+        index = builder.build(1);
+        availableDates = Lists.newArrayList(index.availableDates(from, to));
+    }
+
+    @Benchmark
+    public byte[] databind() throws Exception {
+        return objectMapper.writeValueAsBytes(availableDates);
+    }
+
+    @Benchmark
+    public byte[] streaming() {
+        return responseCache.encode(index, from, to, AvailabilityFormat.DATES).getJson();
+    }
+
+    @Benchmark
+    public byte[] intervals() {
+        return responseCache.encode(index, from, to, AvailabilityFormat.INTERVALS).getJson();
+    }
+
+    @Benchmark
+    public byte[] bitmap() {
+        return responseCache.encode(index, from, to, AvailabilityFormat.BITMAP).getJson();
+    }
+}
@@ -0,0 +1,58 @@
+package org.bin2.island.booking.api;
+
+import org.bin2.island.booking.service.BookingWindow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * validation of a valid request and of a request with every error
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookingRequestValidatorBenchmark {
+    private BookingRequestValidator validator;
+    private BookingRequest valid;
+    private BookingRequest invalid;
+
+    @Setup
+    public void setup() {
+        validator = new BookingRequestValidator(new BookingWindow("P1M"));
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+        valid = BookingRequest.builder()
+                .startDate(tomorrow)
+                .endDate(tomorrow.plusDays(3))
+                .bookingInfo(BookingInfo.builder().email("benoit.roger@gmail.com").firstname("benoit").lastname("roger").build())
+                .build();
+        invalid = BookingRequest.builder()
+                .startDate(tomorrow.plusMonths(2))
+                .endDate(tomorrow)
+                .bookingInfo(new BookingInfo())
+                .build();
+    }
+
+    @Benchmark
+    public List<Error> validRequest() {
+        return validator.validateBookingRequest(valid);
+    }
+
+    @Benchmark
+    public List<Error> invalidRequest() {
+        return validator.validateBookingRequest(invalid);
+    }
+}
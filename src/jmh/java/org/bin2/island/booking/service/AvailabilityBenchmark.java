@@ -0,0 +1,169 @@
+package org.bin2.island.booking.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.vertx.reactivex.sqlclient.SqlClient;
+import org.bin2.island.booking.model.BookingEvent;
+import org.bin2.island.booking.repository.BookingRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * available dates of the whole booking window: {@link BookingService#getAvailableDates} on the bitmap index
+ * and the same lookup on the alternative structures of the booked dates, starting with the former TreeSet cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvailabilityBenchmark {
+
+    @Param({"30", "365"})
+    int windowDays;
+
+    /**
+     * share of the window already booked
+     */
+    @Param({"0.1", "0.5", "0.9"})
+    double density;
+
+    private LocalDate from;
+    private LocalDate to;
+    private BookingService bookingService;
+    private AvailabilityIndex index;
+    private TreeSet<LocalDate> treeSet;
+    private Set<Long> hashSet;
+    private BitSet bitSet;
+    private long[] sortedDays;
+
+    @Setup
+    public void setup() {
+        BookingWindow bookingWindow = new BookingWindow("P" + windowDays + "D");
+        from = bookingWindow.minDate();
+        to = bookingWindow.maxDate();
+        Random random = new Random(42);
+        List<LocalDate> booked = from.datesUntil(to)
+                .filter(d -> random.nextDouble() < density)
+                .collect(Collectors.toList());
+
+        BookingRepository repository = new BookingRepository() {
+            @Override
+            public Flowable<LocalDate> bookedDates(SqlClient client, LocalDate from, LocalDate to) {
+                return Flowable.fromIterable(booked);
+            }
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ReadPool readPool = new ReadPool(null, new PoolMetrics(registry, "read", 1)) {
+            @Override
+            public <T> Flowable<T> withConnection(Function<SqlClient, Flowable<T>> query) {
+                return query.apply(null);
+            }
+        };
+        AvailabilityCache availabilityCache = new AvailabilityCache(repository, readPool, bookingWindow, Duration.ofMillis(500), Duration.ofSeconds(5), registry);
+        bookingService = new BookingService(repository, null, new NoEventPublisher(), availabilityCache,
+                new BookingClaims(), new BookingCache(1, Duration.ofMinutes(1)),
+                new IdempotencyKeys(null, null, 1, Duration.ofMinutes(1), Duration.ofMinutes(1), registry),
+                new EventSequences(Duration.ofSeconds(30)), registry);
+        index = availabilityCache.get().blockingGet();
+
+        treeSet = new TreeSet<>(booked);
+        hashSet = booked.stream().map(LocalDate::toEpochDay).collect(Collectors.toCollection(HashSet::new));
+        bitSet = new BitSet(windowDays);
+        booked.forEach(d -> bitSet.set((int) (d.toEpochDay() - from.toEpochDay())));
+        sortedDays = booked.stream().mapToLong(LocalDate::toEpochDay).sorted().toArray();
+    }
+
+    @Benchmark
+    public void getAvailableDates(Blackhole blackhole) {
+        bookingService.getAvailableDates(from, to).blockingSubscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void bitmapIndex(Blackhole blackhole) {
+        for (LocalDate date : index.availableDates(from, to)) {
+            blackhole.consume(date);
+        }
+    }
+
+    @Benchmark
+    public void treeSet(Blackhole blackhole) {
+        for (LocalDate date = from; date.isBefore(to); date = date.plusDays(1)) {
+            if (!treeSet.contains(date)) {
+                blackhole.consume(date);
+            }
+        }
+    }
+
+    @Benchmark
+    public void hashSet(Blackhole blackhole) {
+        for (long day = from.toEpochDay(); day < to.toEpochDay(); day++) {
+            if (!hashSet.contains(day)) {
+                blackhole.consume(LocalDate.ofEpochDay(day));
+            }
+        }
+    }
+
+    @Benchmark
+    public void bitSet(Blackhole blackhole) {
+        int length = (int) (to.toEpochDay() - from.toEpochDay());
+        for (int offset = bitSet.nextClearBit(0); offset < length; offset = bitSet.nextClearBit(offset + 1)) {
+            blackhole.consume(from.plusDays(offset));
+        }
+    }
+
+    @Benchmark
+    public void sortedArray(Blackhole blackhole) {
+        for (long day = from.toEpochDay(); day < to.toEpochDay(); day++) {
+            if (Arrays.binarySearch(sortedDays, day) < 0) {
+                blackhole.consume(LocalDate.ofEpochDay(day));
+            }
+        }
+    }
+
+    private static class NoEventPublisher implements BookingEventPublisher {
+        @Override
+        public String getOrigin() {
+            return "benchmark";
+        }
+
+        @Override
+        public Completable append(SqlClient tx, BookingEvent event) {
+            return Completable.complete();
+        }
+
+        @Override
+        public String appendStatement() {
+            return "SELECT $2::text FROM event";
+        }
+
+        @Override
+        public void committed(BookingEvent event) {
+        }
+    }
+}
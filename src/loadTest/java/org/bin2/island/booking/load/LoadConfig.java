@@ -0,0 +1,71 @@
+package org.bin2.island.booking.load;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * load settings, read from the load.* system properties
+ */
+@Data
+@Builder
+public class LoadConfig {
+    /**
+     * application instances started against the same db
+     */
+    private final int nodes;
+    /**
+     * vertx.pg.client.maxSize of each node
+     */
+    private final int poolSize;
+    /**
+     * booking.read-pool.max-size of each node
+     */
+    private final int readPoolSize;
+    /**
+     * booking.window.length of each node
+     */
+    private final String window;
+    /**
+     * concurrent clients, each one sends its next request once the previous one is answered
+     */
+    private final int clients;
+    private final Duration warmup;
+    private final Duration duration;
+    /**
+     * share of the requests that are bookings and cancellations, the others read the available dates
+     */
+    private final double bookShare;
+    private final double cancelShare;
+    /**
+     * share of the bookings targeting the hot dates, the first hotDays of the booking window
+     */
+    private final double hotShare;
+    private final int hotDays;
+    private final int maxNights;
+    /**
+     * booking.admission.enabled of each node, all the clients share one address so it is off by default
+     */
+    private final boolean admission;
+    private final String report;
+
+    public static LoadConfig fromSystemProperties() {
+        return LoadConfig.builder()
+                .nodes(Integer.getInteger("load.nodes", 2))
+                .poolSize(Integer.getInteger("load.pool-size", 5))
+                .readPoolSize(Integer.getInteger("load.read-pool-size", 2))
+                .window(System.getProperty("load.window", "P1M"))
+                .clients(Integer.getInteger("load.clients", 32))
+                .warmup(Duration.parse(System.getProperty("load.warmup", "PT5S")))
+                .duration(Duration.parse(System.getProperty("load.duration", "PT30S")))
+                .bookShare(Double.parseDouble(System.getProperty("load.book-share", "0.4")))
+                .cancelShare(Double.parseDouble(System.getProperty("load.cancel-share", "0.1")))
+                .hotShare(Double.parseDouble(System.getProperty("load.hot-share", "0.8")))
+                .hotDays(Integer.getInteger("load.hot-days", 3))
+                .maxNights(Integer.getInteger("load.max-nights", 3))
+                .admission(Boolean.getBoolean("load.admission"))
+                .report(System.getProperty("load.report", "build/reports/load/report.json"))
+                .build();
+    }
+}
@@ -0,0 +1,201 @@
+package org.bin2.island.booking.load;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.client.BlockingHttpClient;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.micronaut.runtime.server.EmbeddedServer;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * closed loop load: each client sends a booking, a cancellation or a read of the available dates
+ * to a random node and waits for the answer before sending the next one
+ */
+@Slf4j
+public class LoadDriver {
+    private static final String API = "/api/v1/booking";
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final LoadConfig config;
+    private final List<EmbeddedServer> nodes;
+    private final List<BlockingHttpClient> httpClients;
+    private final Queue<String> bookingIds = new ConcurrentLinkedQueue<>();
+
+    public LoadDriver(LoadConfig config, List<EmbeddedServer> nodes) {
+        this.config = config;
+        this.nodes = nodes;
+        this.httpClients = nodes.stream()
+                .map(node -> HttpClient.create(node.getURL()).toBlocking())
+                .collect(Collectors.toList());
+    }
+
+    public LoadReport run() throws InterruptedException {
+        log.info("warming up for {}", config.getWarmup());
+        phase(config.getWarmup(), new Stats());
+        log.info("measuring for {}", config.getDuration());
+        Stats stats = new Stats();
+        List<Timer> waitTimers = nodes.stream().map(node -> registry(node).get("booking.pool.wait").tag("pool", "write").timer()).collect(Collectors.toList());
+        long waitCount = waitTimers.stream().mapToLong(Timer::count).sum();
+        double waitTotal = waitTimers.stream().mapToDouble(t -> t.totalTime(TimeUnit.MILLISECONDS)).sum();
+
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        List<Gauge> pending = nodes.stream().map(node -> registry(node).get("booking.pool.pending").tag("pool", "write").gauge()).collect(Collectors.toList());
+        sampler.scheduleAtFixedRate(() -> stats.samplePending((long) pending.stream().mapToDouble(Gauge::value).sum()),
+                0, 50, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        phase(config.getDuration(), stats);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        sampler.shutdownNow();
+
+        long waits = waitTimers.stream().mapToLong(Timer::count).sum() - waitCount;
+        double waitMean = waits == 0 ? 0 : (waitTimers.stream().mapToDouble(t -> t.totalTime(TimeUnit.MILLISECONDS)).sum() - waitTotal) / waits;
+        double waitMax = waitTimers.stream().mapToDouble(t -> t.max(TimeUnit.MILLISECONDS)).max().orElse(0);
+
+        Map<String, LoadReport.OperationStats> operations = new LinkedHashMap<>();
+        operations.put("book", stats.book.summary(seconds));
+        operations.put("cancel", stats.cancel.summary(seconds));
+        operations.put("available", stats.available.summary(seconds));
+        long answered = stats.booked.sum() + stats.conflicts.sum();
+        return LoadReport.builder()
+                .config(config)
+                .seconds(seconds)
+                .operations(operations)
+                .conflictRate(answered == 0 ? 0 : (double) stats.conflicts.sum() / answered)
+                .pool(new LoadReport.PoolStats(config.getPoolSize() * nodes.size(),
+                        stats.samples.sum() == 0 ? 0 : (double) stats.pendingTotal.sum() / stats.samples.sum(),
+                        stats.pendingMax.get(), waitMean, waitMax))
+                .build();
+    }
+
+    private void phase(Duration duration, Stats stats) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(config.getClients());
+        for (int i = 0; i < config.getClients(); i++) {
+            executor.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    request(stats);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(duration.toMillis() + TimeUnit.MINUTES.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    private void request(Stats stats) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        BlockingHttpClient client = httpClients.get(random.nextInt(httpClients.size()));
+        double operation = random.nextDouble();
+        if (operation < config.getBookShare()) {
+            book(client, stats);
+        } else if (operation < config.getBookShare() + config.getCancelShare() && !bookingIds.isEmpty()) {
+            cancel(client, stats);
+        } else {
+            stats.available.time(() -> client.retrieve(API + "/available"));
+        }
+    }
+
+    private void book(BlockingHttpClient client, Stats stats) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate minDate = LocalDate.now().plusDays(1);
+        int windowDays = (int) minDate.until(minDate.plus(Period.parse(config.getWindow())), ChronoUnit.DAYS);
+        int nights = 1 + random.nextInt(config.getMaxNights());
+        int range = random.nextDouble() < config.getHotShare() ? config.getHotDays() : windowDays - nights + 1;
+        LocalDate startDate = minDate.plusDays(random.nextInt(Math.max(1, range)));
+        Map<String, Object> request = Map.of(
+                "startDate", startDate.toString(),
+                "endDate", startDate.plusDays(nights).toString(),
+                "bookingInfo", Map.of("email", "load@test.org", "firstname", "load", "lastname", "test"));
+        stats.book.time(() -> {
+            try {
+                bookingIds.add(client.retrieve(HttpRequest.POST(API + "/", request), String.class));
+                stats.booked.increment();
+            } catch (HttpClientResponseException e) {
+                if (e.getStatus() != HttpStatus.CONFLICT) {
+                    throw e;
+                }
+                stats.conflicts.increment();
+            }
+        });
+    }
+
+    private void cancel(BlockingHttpClient client, Stats stats) {
+        String bookingId = bookingIds.poll();
+        if (bookingId != null) {
+            stats.cancel.time(() -> client.exchange(HttpRequest.DELETE(API + "/" + bookingId)));
+        }
+    }
+
+    private static MeterRegistry registry(EmbeddedServer node) {
+        return node.getApplicationContext().getBean(MeterRegistry.class);
+    }
+
+    private static class Stats {
+        private final Operation book = new Operation();
+        private final Operation cancel = new Operation();
+        private final Operation available = new Operation();
+        private final LongAdder booked = new LongAdder();
+        private final LongAdder conflicts = new LongAdder();
+        private final LongAdder samples = new LongAdder();
+        private final LongAdder pendingTotal = new LongAdder();
+        private final LongAccumulator pendingMax = new LongAccumulator(Math::max, 0);
+
+        private void samplePending(long pending) {
+            samples.increment();
+            pendingTotal.add(pending);
+            pendingMax.accumulate(pending);
+        }
+    }
+
+    private static class Operation {
+        private final Histogram latencies = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+        private final LongAdder errors = new LongAdder();
+        private final AtomicBoolean logged = new AtomicBoolean();
+
+        private void time(Runnable request) {
+            long start = System.nanoTime();
+            try {
+                request.run();
+            } catch (RuntimeException e) {
+                errors.increment();
+                if (logged.compareAndSet(false, true)) {
+                    // only the first failure, the others are counted
+                    log.warn("request failed", e);
+                }
+            }
+            latencies.recordValue(Math.min(HIGHEST_MICROS, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)));
+        }
+
+        private LoadReport.OperationStats summary(double seconds) {
+            long count = latencies.getTotalCount();
+            return new LoadReport.OperationStats(count, errors.sum(), count / seconds,
+                    latencies.getValueAtPercentile(50) / 1000.0,
+                    latencies.getValueAtPercentile(99) / 1000.0,
+                    latencies.getMaxValue() / 1000.0);
+        }
+    }
+}
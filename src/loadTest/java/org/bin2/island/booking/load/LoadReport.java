@@ -0,0 +1,62 @@
+package org.bin2.island.booking.load;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * outcome of the measured phase, the warmup is not included
+ */
+@Data
+@Builder
+public class LoadReport {
+    private final LoadConfig config;
+    private final double seconds;
+    /**
+     * keyed by operation: book, cancel, available
+     */
+    private final Map<String, OperationStats> operations;
+    /**
+     * rejected bookings among the bookings answered
+     */
+    private final double conflictRate;
+    private final PoolStats pool;
+
+    @Data
+    @AllArgsConstructor
+    public static class OperationStats {
+        private final long count;
+        private final long errors;
+        private final double throughput;
+        private final double p50Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+    }
+
+    /**
+     * connection acquisitions of the booking transactions on the write pool, summed over the nodes
+     */
+    @Data
+    @AllArgsConstructor
+    public static class PoolStats {
+        private final int size;
+        private final double pendingMean;
+        private final long pendingMax;
+        private final double waitMeanMillis;
+        private final double waitMaxMillis;
+    }
+
+    public String format() {
+        StringBuilder out = new StringBuilder(String.format("%d nodes, pool %d, %d clients, %.1fs%n",
+                config.getNodes(), config.getPoolSize(), config.getClients(), seconds));
+        out.append(String.format("%-10s %10s %8s %10s %10s %10s %10s%n", "operation", "count", "errors", "req/s", "p50 ms", "p99 ms", "max ms"));
+        operations.forEach((name, stats) -> out.append(String.format("%-10s %10d %8d %10.1f %10.2f %10.2f %10.2f%n",
+                name, stats.getCount(), stats.getErrors(), stats.getThroughput(), stats.getP50Millis(), stats.getP99Millis(), stats.getMaxMillis())));
+        out.append(String.format("conflict rate %.1f%%%n", conflictRate * 100));
+        out.append(String.format("pool pending mean %.2f max %d, wait mean %.2f ms max %.2f ms%n",
+                pool.getPendingMean(), pool.getPendingMax(), pool.getWaitMeanMillis(), pool.getWaitMaxMillis()));
+        return out.toString();
+    }
+}
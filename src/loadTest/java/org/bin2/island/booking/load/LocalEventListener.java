@@ -0,0 +1,40 @@
+package org.bin2.island.booking.load;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.schedulers.Schedulers;
+import org.bin2.island.booking.service.BookingService;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Singleton;
+import java.util.List;
+
+/**
+ * receive the events of {@link LocalEventPublisher} on another thread, in the order they were sent
+ */
+@Singleton
+@Requires(property = "booking.events.transport", value = "local")
+public class LocalEventListener {
+    private final BookingService bookingService;
+    private volatile Disposable subscription = Disposables.disposed();
+
+    public LocalEventListener(BookingService bookingService) {
+        this.bookingService = bookingService;
+    }
+
+    @EventListener
+    public void onStartup(StartupEvent event) {
+        subscription = LocalEventPublisher.events()
+                .onBackpressureBuffer()
+                .observeOn(Schedulers.io())
+                .subscribe(e -> bookingService.onBookingEvents(List.of(e)));
+    }
+
+    @PreDestroy
+    public void close() {
+        subscription.dispose();
+    }
+}
@@ -0,0 +1,55 @@
+package org.bin2.island.booking.load;
+
+import io.micronaut.context.annotation.Requires;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import io.vertx.reactivex.sqlclient.SqlClient;
+import org.bin2.island.booking.model.BookingEvent;
+import org.bin2.island.booking.service.BookingEventPublisher;
+
+import javax.inject.Singleton;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * booking.events.transport=local: in process stand-in for kafka, the events are sent on commit
+ * to every node started in this jvm with the same origin and sequence as the relay
+ */
+@Singleton
+@Requires(property = "booking.events.transport", value = "local")
+public class LocalEventPublisher implements BookingEventPublisher {
+    /**
+     * shared by the application contexts of the jvm
+     */
+    private static final FlowableProcessor<BookingEvent> EVENTS = PublishProcessor.<BookingEvent>create().toSerialized();
+
+    private final String origin = UUID.randomUUID().toString();
+    private final AtomicLong sequence = new AtomicLong();
+
+    static Flowable<BookingEvent> events() {
+        return EVENTS;
+    }
+
+    @Override
+    public String getOrigin() {
+        return origin;
+    }
+
+    @Override
+    public Completable append(SqlClient tx, BookingEvent event) {
+        return Completable.complete();
+    }
+
+    @Override
+    public String appendStatement() {
+        return "SELECT $2::text FROM event";
+    }
+
+    @Override
+    public synchronized void committed(BookingEvent event) {
+        // stamped and sent under the same lock so the events of this node are received in sequence order
+        EVENTS.onNext(event.toBuilder().sequence(sequence.incrementAndGet()).build());
+    }
+}
@@ -0,0 +1,136 @@
+package org.bin2.island.booking.api;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpMethod;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Filter;
+import io.micronaut.http.filter.HttpServerFilter;
+import io.micronaut.http.filter.ServerFilterChain;
+import io.reactivex.Flowable;
+import lombok.extern.slf4j.Slf4j;
+import org.bin2.island.booking.service.PoolMetrics;
+import org.reactivestreams.Publisher;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * admission of the write requests, the reads are served from the caches and are never limited.
+ * a client over its token bucket gets a 429, a request over the concurrency limit gets a 503,
+ * both with a Retry-After instead of waiting in the queue of the pool.
+ * the limit follows the wait of every connection taken from the write pool, the bookings as well as the cancels,
+ * the updates, the relay of the outbox and the maintenance jobs
+ */
+@Slf4j
+@Filter("/api/v1/booking/**")
+@Requires(property = "booking.admission.enabled", value = "true", defaultValue = "true")
+public class AdmissionFilter implements HttpServerFilter {
+    private final Cache<String, TokenBucket> buckets;
+    private final double rate;
+    private final int burst;
+    private final String clientHeader;
+    private final int trustedHops;
+    private final ConcurrencyLimit concurrencyLimit;
+    private final Duration retryAfter;
+    private final Counter rateRejections;
+    private final Counter concurrencyRejections;
+
+    public AdmissionFilter(PoolMetrics poolMetrics, MeterRegistry registry,
+                           @Value("${booking.admission.client.rate:20}") double rate,
+                           @Value("${booking.admission.client.burst:40}") int burst,
+                           @Value("${booking.admission.client.max-clients:10000}") long maxClients,
+                           @Value("${booking.admission.client.header:}") String clientHeader,
+                           @Value("${booking.admission.client.trusted-hops:1}") int trustedHops,
+                           @Value("${booking.admission.limit.min:1}") int minLimit,
+                           @Value("${booking.admission.limit.max:64}") int maxLimit,
+                           @Value("${booking.admission.limit.initial:16}") int initialLimit,
+                           @Value("${booking.admission.limit.target-wait:20ms}") Duration targetWait,
+                           @Value("${booking.admission.retry-after:1s}") Duration retryAfter) {
+        this.buckets = CacheBuilder.newBuilder()
+                .maximumSize(maxClients)
+                // an idle client is back to a full bucket anyway
+                .expireAfterAccess(Duration.ofNanos((long) Math.ceil(burst / rate * TimeUnit.SECONDS.toNanos(1))))
+                .build();
+        this.rate = rate;
+        this.burst = burst;
+        this.clientHeader = clientHeader;
+        this.trustedHops = Math.max(1, trustedHops);
+        this.concurrencyLimit = new ConcurrencyLimit(minLimit, maxLimit, initialLimit, targetWait, poolMetrics::getRecentWait);
+        this.retryAfter = retryAfter;
+        Gauge.builder("booking.admission.limit", concurrencyLimit, ConcurrencyLimit::getLimit)
+                .description("write requests allowed at the same time")
+                .register(registry);
+        Gauge.builder("booking.admission.inflight", concurrencyLimit, ConcurrencyLimit::getInFlight)
+                .description("write requests in progress")
+                .register(registry);
+        this.rateRejections = registry.counter("booking.admission.rejected", "reason", "rate");
+        this.concurrencyRejections = registry.counter("booking.admission.rejected", "reason", "concurrency");
+    }
+
+    @Override
+    public Publisher<MutableHttpResponse<?>> doFilter(HttpRequest<?> request, ServerFilterChain chain) {
+        if (request.getMethod() == HttpMethod.GET) {
+            return chain.proceed(request);
+        }
+        long now = System.nanoTime();
+        long wait = bucket(client(request), now).tryTake(now);
+        if (wait > 0) {
+            rateRejections.increment();
+            return Flowable.just(reject(HttpStatus.TOO_MANY_REQUESTS, "TOO_MANY_REQUESTS", "too many requests from this client",
+                    Duration.ofNanos(wait)));
+        }
+        if (!concurrencyLimit.tryAcquire()) {
+            concurrencyRejections.increment();
+            return Flowable.just(reject(HttpStatus.SERVICE_UNAVAILABLE, "OVERLOADED", "too many requests in progress", retryAfter));
+        }
+        return Flowable.fromPublisher(chain.proceed(request)).doFinally(concurrencyLimit::release);
+    }
+
+    private TokenBucket bucket(String client, long now) {
+        try {
+            return buckets.get(client, () -> new TokenBucket(rate, burst, now));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private String client(HttpRequest<?> request) {
+        if (!clientHeader.isEmpty()) {
+            List<String> forwarded = request.getHeaders().getAll(clientHeader);
+            if (!forwarded.isEmpty()) {
+                return client(String.join(",", forwarded), trustedHops);
+            }
+        }
+        return request.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    /**
+     * each proxy appends the address it received the request from, the entries on the left are set by the client.
+     * the client is the address appended by the farthest of the trusted proxies
+     */
+    static String client(String forwarded, int trustedHops) {
+        String[] addresses = forwarded.split(",");
+        return addresses[Math.max(0, addresses.length - trustedHops)].trim();
+    }
+
+    private MutableHttpResponse<?> reject(HttpStatus status, String code, String message, Duration retryAfter) {
+        long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        return HttpResponse.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+                .body(ErrorsReponse.builder()
+                        .error(Error.builder().code(code).message(message).build())
+                        .build());
+    }
+}
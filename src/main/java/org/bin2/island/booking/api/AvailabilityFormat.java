@@ -0,0 +1,84 @@
+package org.bin2.island.booking.api;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * representations of the available dates, chosen with the Accept header of GET /available:
+ * <ul>
+ * <li>DATES: application/json, one date per available night</li>
+ * <li>INTERVALS: application/vnd.booking.intervals+json, [{"from", "to"}] runs of available nights (to excluded)</li>
+ * <li>BITMAP: application/vnd.booking.bitmap+json, {"start", "days", "bitmap"} one bit per night from start,
+ * base64 encoded, bit i (byte i / 8, least significant bit first) set when start + i is available</li>
+ * </ul>
+ */
+public enum AvailabilityFormat {
+    DATES(MediaType.APPLICATION_JSON),
+    INTERVALS(AvailabilityFormat.INTERVALS_JSON),
+    BITMAP(AvailabilityFormat.BITMAP_JSON);
+
+    static final String INTERVALS_JSON = "application/vnd.booking.intervals+json";
+    static final String BITMAP_JSON = "application/vnd.booking.bitmap+json";
+
+    private final String mediaType;
+
+    AvailabilityFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return the accepted format with the highest quality, an exact media type wins over a wildcard
+     * and the first one listed wins otherwise. DATES when there is no Accept header or none of the formats is accepted
+     */
+    static AvailabilityFormat negotiate(String accept) {
+        if (accept == null) {
+            return DATES;
+        }
+        AvailabilityFormat best = DATES;
+        double bestQuality = 0;
+        boolean bestExact = false;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String mediaType = parts[0].trim();
+            AvailabilityFormat format = of(mediaType);
+            // */* and application/* are the default representation
+            boolean wildcard = format == null && ("*/*".equals(mediaType) || "application/*".equalsIgnoreCase(mediaType));
+            if (format == null && !wildcard) {
+                continue;
+            }
+            double quality = quality(parts);
+            if (quality > bestQuality || (quality == bestQuality && quality > 0 && !wildcard && !bestExact)) {
+                best = wildcard ? DATES : format;
+                bestQuality = quality;
+                bestExact = !wildcard;
+            }
+        }
+        return best;
+    }
+
+    private static AvailabilityFormat of(String mediaType) {
+        for (AvailabilityFormat format : values()) {
+            if (format.mediaType.equalsIgnoreCase(mediaType)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
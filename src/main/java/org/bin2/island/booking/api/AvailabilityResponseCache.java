@@ -0,0 +1,120 @@
+package org.bin2.island.booking.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import io.micronaut.context.annotation.Value;
+import io.reactivex.Single;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.bin2.island.booking.service.AvailabilityIndex;
+import org.bin2.island.booking.service.BookingService;
+
+import javax.inject.Singleton;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+
+/**
+ * encoded available dates of the recently requested windows, in each of the {@link AvailabilityFormat}.
+ * an entry is encoded once per version of the availability index and then served as is
+ */
+@Singleton
+public class AvailabilityResponseCache {
+    private final BookingService bookingService;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, EncodedAvailability> responses;
+
+    public AvailabilityResponseCache(BookingService bookingService, ObjectMapper objectMapper,
+                                     @Value("${booking.available.response-cache-size:64}") long size) {
+        this.bookingService = bookingService;
+        this.objectMapper = objectMapper;
+        this.responses = CacheBuilder.newBuilder().maximumSize(size).build();
+    }
+
+    public Single<EncodedAvailability> get(LocalDate from, LocalDate to, AvailabilityFormat format) {
+        String key = format + "/" + from + "/" + to;
+        return bookingService.getAvailabilityIndex().map(index -> {
+            EncodedAvailability cached = responses.getIfPresent(key);
+            if (cached != null && cached.getVersion() == index.getVersion()) {
+                return cached;
+            }
+            EncodedAvailability encoded = encode(index, from, to, format);
+            responses.put(key, encoded);
+            return encoded;
+        });
+    }
+
+    EncodedAvailability encode(AvailabilityIndex index, LocalDate from, LocalDate to, AvailabilityFormat format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            switch (format) {
+                case INTERVALS:
+                    writeIntervals(generator, index, from, to);
+                    break;
+                case BITMAP:
+                    writeBitmap(generator, index, from, to);
+                    break;
+                default:
+                    writeDates(generator, index, from, to);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] json = out.toByteArray();
+        // the etag is computed from the content so it does not depend on the node that served the request
+        String etag = "\"" + Hashing.murmur3_128().hashBytes(json) + "\"";
+        return new EncodedAvailability(index.getVersion(), json, etag);
+    }
+
+    private static void writeDates(JsonGenerator generator, AvailabilityIndex index, LocalDate from, LocalDate to) throws IOException {
+        generator.writeStartArray();
+        for (LocalDate date : index.availableDates(from, to)) {
+            generator.writeString(date.toString());
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * one object per run of available nights, its size depends on the number of bookings and not on the window
+     */
+    private static void writeIntervals(JsonGenerator generator, AvailabilityIndex index, LocalDate from, LocalDate to) throws IOException {
+        long toDay = to.toEpochDay();
+        generator.writeStartArray();
+        for (long start = index.nextAvailable(from.toEpochDay(), toDay); start >= 0; ) {
+            long end = index.nextBooked(start, toDay);
+            if (end < 0) {
+                end = toDay;
+            }
+            generator.writeStartObject();
+            generator.writeStringField("from", LocalDate.ofEpochDay(start).toString());
+            generator.writeStringField("to", LocalDate.ofEpochDay(end).toString());
+            generator.writeEndObject();
+            start = end < toDay ? index.nextAvailable(end, toDay) : -1;
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * one bit per night, about 4 characters per month of window
+     */
+    private static void writeBitmap(JsonGenerator generator, AvailabilityIndex index, LocalDate from, LocalDate to) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("start", from.toString());
+        generator.writeNumberField("days", Math.max(0, to.toEpochDay() - from.toEpochDay()));
+        generator.writeFieldName("bitmap");
+        generator.writeBinary(index.availableBitmap(from, to));
+        generator.writeEndObject();
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class EncodedAvailability {
+        private final long version;
+        private final byte[] json;
+        private final String etag;
+    }
+}
@@ -0,0 +1,94 @@
+package org.bin2.island.booking.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.sse.Event;
+import io.reactivex.BackpressureOverflowStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.bin2.island.booking.service.AvailabilityChange;
+import org.bin2.island.booking.service.BookingService;
+import org.bin2.island.booking.service.BookingWindow;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * server sent events of the availability: a snapshot of the available dates of the booking window
+ * followed by the dates released and booked.
+ * each change is encoded once and shared by all the subscribers, a subscriber that does not keep up
+ * with the changes gets disconnected once its buffer is full and has to reconnect to get a new snapshot
+ */
+@Slf4j
+@Controller("/api/v1/booking")
+public class AvailabilityStreamController {
+    private final BookingWindow bookingWindow;
+    private final AvailabilityResponseCache availabilityResponseCache;
+    private final ObjectMapper objectMapper;
+    private final int bufferSize;
+    private final Flowable<EncodedChange> changes;
+
+    public AvailabilityStreamController(BookingService bookingService, BookingWindow bookingWindow,
+                                        AvailabilityResponseCache availabilityResponseCache, ObjectMapper objectMapper,
+                                        @Value("${booking.available.stream-buffer-size:256}") int bufferSize) {
+        this.bookingWindow = bookingWindow;
+        this.availabilityResponseCache = availabilityResponseCache;
+        this.objectMapper = objectMapper;
+        this.bufferSize = bufferSize;
+        this.changes = bookingService.getAvailabilityChanges()
+                .onBackpressureBuffer()
+                // the changes are encoded and dispatched outside of the thread updating the cache
+                .observeOn(Schedulers.computation())
+                .map(this::encode)
+                .share();
+    }
+
+    @Get(value = "/available/stream", produces = MediaType.TEXT_EVENT_STREAM)
+    public Flowable<Event<String>> streamAvailableDates() {
+        return changes
+                .onBackpressureBuffer(bufferSize, () -> log.info("availability subscriber too slow, disconnecting"),
+                        BackpressureOverflowStrategy.ERROR)
+                // the changes are buffered while the snapshot is retrieved so none is missed.
+                // publish prefetches a single change, the buffer above is the only one a slow subscriber can fill
+                .publish(live -> availabilityResponseCache.get(bookingWindow.minDate(), bookingWindow.maxDate(), AvailabilityFormat.DATES)
+                        .toFlowable()
+                        .concatMap(snapshot -> live
+                                .filter(change -> change.getVersion() > snapshot.getVersion())
+                                .map(EncodedChange::getEvent)
+                                .startWith(snapshotEvent(snapshot))), 1);
+    }
+
+    private EncodedChange encode(AvailabilityChange change) throws JsonProcessingException {
+        long version = change.getIndex().getVersion();
+        if (change.isReset()) {
+            return new EncodedChange(version, snapshotEvent(availabilityResponseCache.encode(change.getIndex(),
+                    bookingWindow.minDate(), bookingWindow.maxDate(), AvailabilityFormat.DATES)));
+        }
+        Map<String, List<LocalDate>> delta = Map.of("available", change.getAvailable(), "booked", change.getBooked());
+        return new EncodedChange(version, Event.of(objectMapper.writeValueAsString(delta))
+                .name("delta")
+                .id(String.valueOf(version)));
+    }
+
+    private Event<String> snapshotEvent(AvailabilityResponseCache.EncodedAvailability snapshot) {
+        return Event.of(new String(snapshot.getJson(), StandardCharsets.UTF_8))
+                .name("snapshot")
+                .id(String.valueOf(snapshot.getVersion()));
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class EncodedChange {
+        private final long version;
+        private final Event<String> event;
+    }
+}
@@ -0,0 +1,23 @@
+package org.bin2.island.booking.api;
+
+import io.vertx.codegen.annotations.DataObject;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * new dates of a booking [startDate, endDate[
+ */
+@Data
+@DataObject
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BookingDates {
+    private LocalDate startDate;
+    private LocalDate endDate;
+}
@@ -0,0 +1,36 @@
+package org.bin2.island.booking.api;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.management.endpoint.annotation.Endpoint;
+import io.micronaut.management.endpoint.annotation.Read;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.bin2.island.booking.service.BookingEventListener;
+
+/**
+ * GET /bookingevents: consumer group of this node and how far it lags behind the booking-update topic
+ */
+@Endpoint(id = "bookingevents", defaultSensitive = false)
+@Requires(beans = BookingEventListener.class)
+public class BookingEventsEndpoint {
+    private final BookingEventListener bookingEventListener;
+
+    public BookingEventsEndpoint(BookingEventListener bookingEventListener) {
+        this.bookingEventListener = bookingEventListener;
+    }
+
+    @Read
+    public BookingEventsStatus status() {
+        return new BookingEventsStatus(bookingEventListener.getGroupId(), bookingEventListener.getLag());
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class BookingEventsStatus {
+        private String groupId;
+        /**
+         * records not received yet, -1 before the first poll
+         */
+        private long lag;
+    }
+}
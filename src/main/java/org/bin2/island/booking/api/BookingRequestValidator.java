@@ -1,20 +1,27 @@
 package org.bin2.island.booking.api;
 
 import java.time.LocalDate;
+import java.time.Period;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Optional;
 
 import javax.inject.Singleton;
 
+import org.bin2.island.booking.service.BookingWindow;
+
 import com.google.common.collect.Lists;
 
 @Singleton
 public class BookingRequestValidator {
+    private final BookingWindow bookingWindow;
+
+    public BookingRequestValidator(BookingWindow bookingWindow) {
+        this.bookingWindow = bookingWindow;
+    }
+
     List<Error> validateBookingRequest(BookingRequest request) {
-        List<Error> errors = Lists.newArrayList();
-        validateMandatoryField(request.getStartDate(), "startDate").ifPresent(errors::add);
-        validateMandatoryField(request.getEndDate(), "endDate").ifPresent(errors::add);
+        List<Error> errors = validateDates(request.getStartDate(), request.getEndDate());
         if (request.getBookingInfo()==null) {
             errors.add(Error.builder()
                     .code("MISSING_FIELD")
@@ -25,25 +32,55 @@ public class BookingRequestValidator {
             validateMandatoryField(request.getBookingInfo().getFirstname(), "bookingInfo.firstname").ifPresent(errors::add);
             validateMandatoryField(request.getBookingInfo().getLastname(), "bookingInfo.lastname").ifPresent(errors::add);
         }
-        if (request.getStartDate()!=null && request.getEndDate()!=null) {
-            if (request.getStartDate().isBefore(LocalDate.now().plus(1, ChronoUnit.DAYS)) ||
-                    request.getEndDate().isAfter(LocalDate.now().plus(1, ChronoUnit.MONTHS).plus(1, ChronoUnit.DAYS)) ) {
+        return errors;
+    }
+
+    List<Error> validateBookingDates(BookingDates dates) {
+        return validateDates(dates.getStartDate(), dates.getEndDate());
+    }
+
+    private List<Error> validateDates(LocalDate startDate, LocalDate endDate) {
+        List<Error> errors = Lists.newArrayList();
+        validateMandatoryField(startDate, "startDate").ifPresent(errors::add);
+        validateMandatoryField(endDate, "endDate").ifPresent(errors::add);
+        if (startDate!=null && endDate!=null) {
+            if (startDate.isBefore(bookingWindow.minDate()) || endDate.isAfter(bookingWindow.maxDate())) {
                 errors.add(Error.builder()
                                 .code("BAD_REQUEST")
-                                .message("should book at least one day before and maximum 1 month in advance")
+                                .message(String.format("should book at least one day before and maximum %s in advance",
+                                        describe(bookingWindow.getLength())))
                                 .build());
             }
-            if (!request.getEndDate().isAfter(request.getStartDate())) {
+            if (!endDate.isAfter(startDate)) {
                 errors.add(Error.builder().message("'endDate' should be after 'startDate'").build());
             }
 
-            if (request.getStartDate().until(request.getEndDate(), ChronoUnit.DAYS)>3) {
+            if (startDate.until(endDate, ChronoUnit.DAYS)>3) {
                 errors.add(Error.builder().message("Cannot book more than 3 days").build());
             }
         }
         return errors;
     }
 
+    /**
+     * @return the period as "1 month", "2 weeks" or "1 year 6 months"
+     */
+    static String describe(Period period) {
+        List<String> parts = Lists.newArrayList();
+        unit(period.getYears(), "year").ifPresent(parts::add);
+        unit(period.getMonths(), "month").ifPresent(parts::add);
+        if (period.getDays() % 7 == 0) {
+            unit(period.getDays() / 7, "week").ifPresent(parts::add);
+        } else {
+            unit(period.getDays(), "day").ifPresent(parts::add);
+        }
+        return parts.isEmpty() ? "0 days" : String.join(" ", parts);
+    }
+
+    private static Optional<String> unit(int count, String unit) {
+        return count == 0 ? Optional.empty() : Optional.of(count + " " + unit + (count > 1 ? "s" : ""));
+    }
+
     private <T> Optional<Error> validateMandatoryField(T value, String field) {
         if (value == null) {
             return Optional.of(Error.builder().code("MISSING_FIELD")
@@ -4,14 +4,15 @@ import io.reactivex.Single;
 import io.reactivex.SingleSource;
 import org.bin2.island.booking.model.Booking;
 import org.bin2.island.booking.service.BookingService;
+import org.bin2.island.booking.service.BookingWindow;
 
 import javax.annotation.Nullable;
 import javax.ws.rs.*;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
-import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,14 +23,20 @@ import lombok.extern.slf4j.Slf4j;
 @Path("/api/v1/booking")
 @AllArgsConstructor
 public class BookingRestApi {
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final int IDEMPOTENCY_KEY_MAX_LENGTH = 255;
 
     private final BookingService bookingService;
     private final BookingRequestValidator bookingRequestValidator;
+    private final BookingWindow bookingWindow;
+    private final AvailabilityResponseCache availabilityResponseCache;
 
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, AvailabilityFormat.INTERVALS_JSON, AvailabilityFormat.BITMAP_JSON})
     @Path("/available")
-    public Single<Response> getAvailableDates(@Nullable  @QueryParam("from") String fromAsString,@Nullable  @QueryParam("to") String toAsString) {
+    public Single<Response> getAvailableDates(@Nullable  @QueryParam("from") String fromAsString,@Nullable  @QueryParam("to") String toAsString,
+                                              @Nullable @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                                              @Nullable @HeaderParam(HttpHeaders.ACCEPT) String accept) {
         final LocalDate from;
         final LocalDate to;
         try {
@@ -57,8 +64,8 @@ public class BookingRestApi {
                             .build())
                     .build());
         }
-        LocalDate minDate = LocalDate.now().plus(1, ChronoUnit.DAYS);
-        LocalDate maxDate = minDate.plus(1, ChronoUnit.MONTHS);
+        LocalDate minDate = bookingWindow.minDate();
+        LocalDate maxDate = bookingWindow.maxDate();
 
         if(from != null && (from.isBefore(minDate) || from.isAfter(maxDate) )) {
             return Single.just(Response.status(Response.Status.BAD_REQUEST)
@@ -73,26 +80,37 @@ public class BookingRestApi {
                             .build())
                     .build());
         } else {
-            return bookingService.getAvailableDates(Optional.ofNullable(from).orElse(minDate),
-                    Optional.ofNullable(to).orElse(maxDate)
-            ).toList()
-                    .map(l -> Response.ok(l).build());
+            AvailabilityFormat format = AvailabilityFormat.negotiate(accept);
+            return availabilityResponseCache.get(Optional.ofNullable(from).orElse(minDate),
+                    Optional.ofNullable(to).orElse(maxDate), format
+            ).map(encoded -> encoded.getEtag().equals(ifNoneMatch) ?
+                    Response.notModified().header(HttpHeaders.ETAG, encoded.getEtag()).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build() :
+                    Response.ok(encoded.getJson(), format.getMediaType()).header(HttpHeaders.ETAG, encoded.getEtag())
+                            // the caches keep one representation per Accept header
+                            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build());
         }
     }
 
     @POST
-    public Single<Response> bookDate(BookingRequest request) {
+    public Single<Response> bookDate(BookingRequest request, @Nullable @HeaderParam(IDEMPOTENCY_KEY) String idempotencyKey) {
         List<Error> errors = this.bookingRequestValidator.validateBookingRequest(request);
         if (errors!=null&&!errors.isEmpty()) {
             return Single.just(Response.status(Response.Status.BAD_REQUEST)
                     .entity(ErrorsReponse.builder().errors(errors).build()).build());
         }
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > IDEMPOTENCY_KEY_MAX_LENGTH)) {
+            return Single.just(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ErrorsReponse.builder()
+                            .error(Error.builder().message(String.format("%s should have between 1 and %d characters", IDEMPOTENCY_KEY, IDEMPOTENCY_KEY_MAX_LENGTH)).build())
+                            .build())
+                    .build());
+        }
         Booking booking = Booking.builder()
                 .email(request.getBookingInfo().getEmail())
                 .firstName(request.getBookingInfo().getFirstname())
                 .lastName(request.getBookingInfo().getLastname())
                 .build();
-        return bookingService.tryToBook(booking, request.getStartDate(), request.getEndDate())
+        return bookingService.tryToBook(booking, request.getStartDate(), request.getEndDate(), idempotencyKey)
                 .map(b ->
                         Response.ok(b.getId()).build())
                 .switchIfEmpty(Single.just(
@@ -103,6 +121,15 @@ public class BookingRestApi {
                                 .build()));
     }
 
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/{bookingId}")
+    public Single<Response> getBooking(@PathParam("bookingId") String bookingId) {
+        return bookingService.getBooking(bookingId)
+                .map(b -> Response.ok(b).build())
+                .switchIfEmpty(buildNotFoundResponse("booking not found "));
+    }
+
     @PUT
     @Path("/{bookingId}")
     public Single<Response> updateBookingInfo(@PathParam("bookingId") String bookingId, BookingInfo bookingInfo) {
@@ -116,6 +143,31 @@ public class BookingRestApi {
                 .switchIfEmpty(buildNotFoundResponse("booking not found "));
     }
 
+    @PATCH
+    @Path("/{bookingId}/dates")
+    public Single<Response> rescheduleBooking(@PathParam("bookingId") String bookingId, BookingDates dates) {
+        List<Error> errors = this.bookingRequestValidator.validateBookingDates(dates);
+        if (!errors.isEmpty()) {
+            return Single.just(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ErrorsReponse.builder().errors(errors).build()).build());
+        }
+        return bookingService.reschedule(bookingId, dates.getStartDate(), dates.getEndDate())
+                .flatMap(result -> {
+                    switch (result) {
+                        case RESCHEDULED:
+                            return Single.just(Response.status(Response.Status.NO_CONTENT).build());
+                        case NOT_FOUND:
+                            return buildNotFoundResponse("booking not found ");
+                        default:
+                            return Single.just(Response.status(Response.Status.CONFLICT)
+                                    .entity(ErrorsReponse.builder()
+                                            .error(Error.builder().code("CONFLICT")
+                                                    .message(String.format("from %s to %s is conflicting with another booking", dates.getStartDate(), dates.getEndDate())).build()).build())
+                                    .build());
+                    }
+                });
+    }
+
     @DELETE
     @Path("/{bookingId}")
     public Single<Response> cancelBooking(@PathParam("bookingId")  String bookingId) {
@@ -0,0 +1,63 @@
+package org.bin2.island.booking.api;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * number of write requests allowed at the same time, adjusted once per window of limit completions:
+ * it shrinks by a quarter when the recent pool wait is over the target
+ * and grows by one when the window reached the limit without waiting on the pool
+ */
+final class ConcurrencyLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetWait;
+    private final LongSupplier recentWait;
+
+    private double limit;
+    private int inFlight;
+    private int completed;
+    private boolean saturated;
+
+    ConcurrencyLimit(int minLimit, int maxLimit, int initialLimit, Duration targetWait, LongSupplier recentWait) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.targetWait = targetWait.toNanos();
+        this.recentWait = recentWait;
+    }
+
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            saturated = true;
+            return false;
+        }
+        inFlight++;
+        if (inFlight == (int) limit) {
+            saturated = true;
+        }
+        return true;
+    }
+
+    synchronized void release() {
+        inFlight--;
+        if (++completed < (int) limit) {
+            return;
+        }
+        if (recentWait.getAsLong() > targetWait) {
+            limit = Math.max(minLimit, limit * 0.75);
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+        completed = 0;
+        saturated = false;
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+}
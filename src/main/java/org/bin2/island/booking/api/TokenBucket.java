@@ -0,0 +1,33 @@
+package org.bin2.island.booking.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * requests allowed for one client: up to burst at once, then rate per second
+ */
+final class TokenBucket {
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long refilled;
+
+    TokenBucket(double ratePerSecond, int burst, long now) {
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilled = now;
+    }
+
+    /**
+     * @return 0 if a token was taken, otherwise the nanoseconds until the next token
+     */
+    synchronized long tryTake(long now) {
+        tokens = Math.min(burst, tokens + (now - refilled) * tokensPerNano);
+        refilled = now;
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+}
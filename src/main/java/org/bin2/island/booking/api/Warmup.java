@@ -0,0 +1,106 @@
+package org.bin2.island.booking.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.health.HealthStatus;
+import io.micronaut.management.health.indicator.HealthIndicator;
+import io.micronaut.management.health.indicator.HealthResult;
+import io.micronaut.management.health.indicator.annotation.Readiness;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import lombok.extern.slf4j.Slf4j;
+import org.bin2.island.booking.service.BookingService;
+import org.bin2.island.booking.service.BookingWindow;
+import org.reactivestreams.Publisher;
+
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * warm startup: the availability index and the response of the whole window are loaded,
+ * the connections of the pool are opened with the booking statements prepared,
+ * and the encoding and validation paths are run a few times before the first request.
+ * /health/readiness is DOWN until it is done so the node gets no traffic from a cold start
+ */
+@Singleton
+@Slf4j
+@Readiness
+@Requires(property = "booking.warmup.enabled", value = "true", defaultValue = "true")
+public class Warmup implements HealthIndicator {
+    private static final String NAME = "warmup";
+
+    private final BookingService bookingService;
+    private final AvailabilityResponseCache availabilityResponseCache;
+    private final BookingRequestValidator bookingRequestValidator;
+    private final BookingWindow bookingWindow;
+    private final ObjectMapper objectMapper;
+    private final int connections;
+    private final int iterations;
+    private final Duration retryDelay;
+    private final boolean exit;
+
+    private volatile boolean done;
+
+    public Warmup(BookingService bookingService, AvailabilityResponseCache availabilityResponseCache,
+                  BookingRequestValidator bookingRequestValidator, BookingWindow bookingWindow, ObjectMapper objectMapper,
+                  @Value("${vertx.pg.client.maxSize:4}") int connections,
+                  @Value("${booking.warmup.iterations:200}") int iterations,
+                  @Value("${booking.warmup.retry-delay:5s}") Duration retryDelay,
+                  @Value("${booking.warmup.exit:false}") boolean exit) {
+        this.bookingService = bookingService;
+        this.availabilityResponseCache = availabilityResponseCache;
+        this.bookingRequestValidator = bookingRequestValidator;
+        this.bookingWindow = bookingWindow;
+        this.objectMapper = objectMapper;
+        this.connections = connections;
+        this.iterations = iterations;
+        this.retryDelay = retryDelay;
+        this.exit = exit;
+    }
+
+    @EventListener
+    public void onStartup(StartupEvent event) {
+        long start = System.nanoTime();
+        warmup()
+                .doOnError(e -> log.warn("warmup failed, retrying in {}", retryDelay, e))
+                .retryWhen(errors -> errors.delay(retryDelay.toMillis(), TimeUnit.MILLISECONDS))
+                .subscribe(() -> {
+                    done = true;
+                    log.info("warmup done in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    if (exit) {
+                        // training run of the class data sharing archive, see the cdsArchive task
+                        new Thread(() -> System.exit(0)).start();
+                    }
+                });
+    }
+
+    Completable warmup() {
+        LocalDate from = bookingWindow.minDate();
+        LocalDate to = bookingWindow.maxDate();
+        return availabilityResponseCache.get(from, to, AvailabilityFormat.DATES).ignoreElement()
+                .andThen(bookingService.prime(connections))
+                .andThen(bookingService.getAvailabilityIndex().flatMapCompletable(index -> Completable.fromAction(() -> {
+                    String request = "{\"startDate\":\"" + from.plusDays(1) + "\",\"endDate\":\"" + from.plusDays(2) + "\"," +
+                            "\"bookingInfo\":{\"email\":\"warmup@localhost\",\"firstname\":\"warm\",\"lastname\":\"up\"}}";
+                    for (int i = 0; i < iterations; i++) {
+                        for (AvailabilityFormat format : AvailabilityFormat.values()) {
+                            availabilityResponseCache.encode(index, from, to, format);
+                        }
+                        bookingRequestValidator.validateBookingRequest(objectMapper.readValue(request, BookingRequest.class));
+                    }
+                })));
+    }
+
+    @Override
+    public Publisher<HealthResult> getResult() {
+        return Flowable.just(HealthResult.builder(NAME, done ? HealthStatus.UP : HealthStatus.DOWN)
+                .details(Map.of("done", done))
+                .build());
+    }
+}
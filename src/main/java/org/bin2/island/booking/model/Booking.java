@@ -4,6 +4,9 @@ import io.vertx.codegen.annotations.DataObject;
 import lombok.Builder;
 import lombok.Data;
 
+import java.time.LocalDate;
+import java.util.List;
+
 @DataObject
 @Data
 @Builder(toBuilder = true)
@@ -13,5 +16,9 @@ public class Booking {
     private final String firstName;
     private final String lastName;
     private final String email;
+    /**
+     * booked nights, only set when the booking is read back
+     */
+    private final List<LocalDate> dates;
 
 }
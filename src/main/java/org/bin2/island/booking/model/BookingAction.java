@@ -1,5 +1,9 @@
 package org.bin2.island.booking.model;
 
 public enum BookingAction {
-    CANCEL, BOOK
+    CANCEL, BOOK,
+    /**
+     * booking info changed, the event has no dates
+     */
+    UPDATE
 }
@@ -0,0 +1,17 @@
+package org.bin2.island.booking.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * nights added to and removed from a booking by a reschedule
+ */
+@Data
+@AllArgsConstructor
+public class BookingDatesChange {
+    private final List<LocalDate> added;
+    private final List<LocalDate> removed;
+}
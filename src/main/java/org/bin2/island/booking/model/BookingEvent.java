@@ -0,0 +1,29 @@
+package org.bin2.island.booking.model;
+
+import io.vertx.codegen.annotations.DataObject;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * booking update published on the booking-update topic.
+ * it carries the dates booked or released so the other nodes can patch their availability cache,
+ * the sequence is incremented by one for each event of the same origin node
+ */
+@DataObject
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder(toBuilder = true)
+public class BookingEvent {
+
+    private String bookingId;
+    private BookingAction action;
+    private List<LocalDate> dates;
+    private String origin;
+    private long sequence;
+}
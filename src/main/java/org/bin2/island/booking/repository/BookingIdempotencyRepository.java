@@ -0,0 +1,43 @@
+package org.bin2.island.booking.repository;
+
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.vertx.reactivex.sqlclient.SqlClient;
+import io.vertx.reactivex.sqlclient.Tuple;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Singleton;
+import java.time.Duration;
+
+/**
+ * idempotency keys of the booking requests, written in the transaction of the booking
+ */
+@Singleton
+@Slf4j
+public class BookingIdempotencyRepository {
+
+    public Completable append(SqlClient client, String key, String bookingId) {
+        return client.preparedQuery("INSERT INTO \"BOOKING_IDEMPOTENCY\"( key, \"bookingId\") VALUES ($1, $2)")
+                .rxExecute(Tuple.of(key, bookingId))
+                .ignoreElement();
+    }
+
+    /**
+     * @return the id of the booking created with this key
+     */
+    public Maybe<String> findBookingId(SqlClient client, String key) {
+        return client.preparedQuery("SELECT \"bookingId\" FROM \"BOOKING_IDEMPOTENCY\" WHERE key = $1")
+                .rxExecute(Tuple.of(key))
+                .flatMapMaybe(rows -> rows.size() == 0 ? Maybe.empty() : Maybe.just(rows.iterator().next().getString("bookingId")));
+    }
+
+    /**
+     * @return number of keys older than retention removed
+     */
+    public Single<Integer> purge(SqlClient client, Duration retention) {
+        return client.preparedQuery("DELETE FROM \"BOOKING_IDEMPOTENCY\" WHERE created < now() - $1 * interval '1 millisecond'")
+                .rxExecute(Tuple.of(retention.toMillis()))
+                .map(rows -> rows.rowCount());
+    }
+}
@@ -0,0 +1,91 @@
+package org.bin2.island.booking.repository;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import io.vertx.reactivex.sqlclient.SqlClient;
+import io.vertx.reactivex.sqlclient.Tuple;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.bin2.island.booking.model.BookingAction;
+import org.bin2.island.booking.model.BookingEvent;
+
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * booking events waiting to be published, they are written in the transaction of the booking
+ */
+@Singleton
+@Slf4j
+public class BookingOutboxRepository {
+
+    public Completable append(SqlClient client, BookingEvent event) {
+        return client.preparedQuery("INSERT INTO \"BOOKING_OUTBOX\"( \"origin\", \"bookingId\", \"action\", \"dates\") VALUES ($1, $2, $3, $4)")
+                .rxExecute(Tuple.of(event.getOrigin(), event.getBookingId(), event.getAction().name(),
+                        event.getDates().toArray(new LocalDate[0])))
+                .ignoreElement();
+    }
+
+    /**
+     * @see org.bin2.island.booking.service.BookingEventPublisher#appendStatement()
+     */
+    public String appendStatement() {
+        return "INSERT INTO \"BOOKING_OUTBOX\"( \"origin\", \"bookingId\", \"action\", \"dates\") " +
+                "SELECT $2::text, \"bookingId\", action, dates FROM event RETURNING id";
+    }
+
+    /**
+     * lease and return the oldest events of the origin and the events of the other origins older than orphanDelay.
+     * the statement commits on its own, the lease keeps the other relays away from the rows while they are sent,
+     * the rows leased for more than orphanDelay are claimed again
+     */
+    public Single<List<OutboxEvent>> claim(SqlClient client, String origin, Duration orphanDelay, int limit) {
+        return client.preparedQuery("UPDATE \"BOOKING_OUTBOX\" SET leased = now() WHERE id IN (" +
+                "SELECT id FROM \"BOOKING_OUTBOX\" WHERE (origin = $1 OR created < now() - $2 * interval '1 millisecond') " +
+                "AND (leased IS NULL OR leased < now() - $2 * interval '1 millisecond') " +
+                "ORDER BY id LIMIT $3 FOR UPDATE SKIP LOCKED) " +
+                "RETURNING id, origin, \"bookingId\", action, dates")
+                .rxExecute(Tuple.of(origin, orphanDelay.toMillis(), limit))
+                .toFlowable().flatMap(rows -> Flowable.fromIterable(rows))
+                // the events are published in the order they were written
+                .sorted(Comparator.comparing(row -> row.getLong("id")))
+                .map(row -> new OutboxEvent(row.getLong("id"), BookingEvent.builder()
+                        .origin(row.getString("origin"))
+                        .bookingId(row.getString("bookingId"))
+                        .action(BookingAction.valueOf(row.getString("action")))
+                        .dates(Arrays.asList(row.getLocalDateArray("dates")))
+                        .build()))
+                .toList();
+    }
+
+    /**
+     * remove the events acknowledged by the broker
+     */
+    public Completable delete(SqlClient client, List<Long> ids) {
+        return ids.isEmpty() ? Completable.complete() : client.preparedQuery("DELETE FROM \"BOOKING_OUTBOX\" WHERE id = ANY($1)")
+                .rxExecute(Tuple.of(ids.toArray(new Long[0])))
+                .ignoreElement();
+    }
+
+    /**
+     * release the lease of the events that could not be sent, the next relay sends them again
+     */
+    public Completable release(SqlClient client, List<Long> ids) {
+        return ids.isEmpty() ? Completable.complete() : client.preparedQuery("UPDATE \"BOOKING_OUTBOX\" SET leased = NULL WHERE id = ANY($1)")
+                .rxExecute(Tuple.of(ids.toArray(new Long[0])))
+                .ignoreElement();
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class OutboxEvent {
+        private final long id;
+        private final BookingEvent event;
+    }
+}
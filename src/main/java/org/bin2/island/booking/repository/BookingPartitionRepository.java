@@ -0,0 +1,103 @@
+package org.bin2.island.booking.repository;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.vertx.reactivex.sqlclient.SqlClient;
+import io.vertx.reactivex.sqlclient.Tuple;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Singleton;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+/**
+ * monthly partitions of "BOOKING_DATE", named BOOKING_DATE_yyyy_MM
+ */
+@Singleton
+@Slf4j
+public class BookingPartitionRepository {
+    static final String ARCHIVE_SCHEMA = "booking_archive";
+    private static final String PREFIX = "BOOKING_DATE_";
+    private static final String DEFAULT = "BOOKING_DATE_DEFAULT";
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy_MM");
+    /**
+     * one maintenance at a time for all the nodes
+     */
+    private static final long LOCK = 0x424f4f4b494e47L;
+
+    /**
+     * @return false if another node holds the lock, it is released at the end of the transaction
+     */
+    public Single<Boolean> tryLock(SqlClient tx) {
+        return tx.preparedQuery("SELECT pg_try_advisory_xact_lock($1) AS locked")
+                .rxExecute(Tuple.of(LOCK))
+                .map(rows -> rows.iterator().next().getBoolean("locked"));
+    }
+
+    /**
+     * @return the months of the monthly partitions attached to "BOOKING_DATE"
+     */
+    public Flowable<YearMonth> partitions(SqlClient client) {
+        return client.query("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = 'public.\"BOOKING_DATE\"'::regclass")
+                .rxExecute()
+                .toFlowable().flatMap(rows -> Flowable.fromIterable(rows))
+                .flatMapMaybe(row -> Optional.ofNullable(month(row.getString("relname"))).map(Maybe::just).orElse(Maybe.empty()));
+    }
+
+    /**
+     * create the partition of the month, to be run in a transaction.
+     * the nights of the month already in the default partition would make the creation fail: the default partition
+     * is detached while the partition is created, the nights are moved to it and the default partition is attached back
+     */
+    public Completable createPartition(SqlClient tx, YearMonth month) {
+        Tuple range = Tuple.of(month.atDay(1), month.plusMonths(1).atDay(1));
+        Completable create = execute(tx, String.format("CREATE TABLE IF NOT EXISTS public.\"%s\" PARTITION OF public.\"BOOKING_DATE\" " +
+                "FOR VALUES FROM ('%s') TO ('%s')", name(month), month.atDay(1), month.plusMonths(1).atDay(1)));
+        return tx.preparedQuery("SELECT EXISTS (SELECT 1 FROM public.\"" + DEFAULT + "\" WHERE date >= $1 AND date < $2) AS found")
+                .rxExecute(range)
+                .flatMapCompletable(rows -> !rows.iterator().next().getBoolean("found") ? create :
+                        execute(tx, "ALTER TABLE public.\"BOOKING_DATE\" DETACH PARTITION public.\"" + DEFAULT + "\"")
+                                .andThen(create)
+                                .andThen(tx.preparedQuery("INSERT INTO public.\"BOOKING_DATE\" (date, \"bookingId\") " +
+                                        "SELECT date, \"bookingId\" FROM public.\"" + DEFAULT + "\" WHERE date >= $1 AND date < $2")
+                                        .rxExecute(range).ignoreElement())
+                                .andThen(tx.preparedQuery("DELETE FROM public.\"" + DEFAULT + "\" WHERE date >= $1 AND date < $2")
+                                        .rxExecute(range)
+                                        .doOnSuccess(moved -> log.info("{} nights moved from {} to {}", moved.rowCount(), DEFAULT, name(month)))
+                                        .ignoreElement())
+                                .andThen(execute(tx, "ALTER TABLE public.\"BOOKING_DATE\" ATTACH PARTITION public.\"" + DEFAULT + "\" DEFAULT")));
+    }
+
+    /**
+     * detach the partition and move it to the archive schema, its nights are no longer read by the queries on "BOOKING_DATE"
+     */
+    public Completable archivePartition(SqlClient client, YearMonth month) {
+        return execute(client, String.format("ALTER TABLE public.\"BOOKING_DATE\" DETACH PARTITION public.\"%s\"", name(month)))
+                .andThen(execute(client, String.format("ALTER TABLE public.\"%s\" SET SCHEMA %s", name(month), ARCHIVE_SCHEMA)));
+    }
+
+    private static Completable execute(SqlClient client, String statement) {
+        return client.query(statement).rxExecute().ignoreElement();
+    }
+
+    static String name(YearMonth month) {
+        return PREFIX + MONTH.format(month);
+    }
+
+    static YearMonth month(String name) {
+        if (!name.startsWith(PREFIX)) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(name.substring(PREFIX.length()), MONTH);
+        } catch (DateTimeParseException e) {
+            // BOOKING_DATE_DEFAULT
+            return null;
+        }
+    }
+}
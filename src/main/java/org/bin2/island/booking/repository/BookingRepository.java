@@ -12,9 +12,13 @@ import io.vertx.reactivex.pgclient.PgPool;
 import io.vertx.reactivex.sqlclient.*;
 import lombok.extern.slf4j.Slf4j;
 import org.bin2.island.booking.model.Booking;
+import org.bin2.island.booking.model.BookingDatesChange;
 
 import javax.inject.Singleton;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
 
 @Singleton
 @Slf4j
@@ -28,36 +32,107 @@ public class BookingRepository {
                 .map(row -> row.getLocalDate("date"));
     }
 
-    public Single<Boolean> deleteBooking(SqlClient client, String bookingId) {
-        return client.preparedQuery("Delete from \"BOOKING\" where id = $1")
-            .rxExecute(Tuple.of(bookingId))
-                .map(r -> r.rowCount()>0);
+    public Maybe<Booking> findBooking(SqlClient client, String bookingId) {
+        return client.preparedQuery("SELECT b.id, b.email, b.firstname, b.lastname, " +
+                "array_agg(d.date ORDER BY d.date) FILTER (WHERE d.date IS NOT NULL) AS dates " +
+                "FROM \"BOOKING\" b LEFT JOIN \"BOOKING_DATE\" d ON d.\"bookingId\" = b.id WHERE b.id = $1 GROUP BY b.id")
+                .rxExecute(Tuple.of(bookingId))
+                .flatMapMaybe(rows -> rows.size() == 0 ? Maybe.empty() : Maybe.just(rows.iterator().next()))
+                .map(row -> toBooking(row, Optional.ofNullable(row.getLocalDateArray("dates")).map(Arrays::asList).orElse(List.of())));
     }
 
-    public Single<Integer> deleteBookingDates(SqlClient client, String bookingId) {
-        return client.preparedQuery("Delete from \"BOOKING_DATE\" where \"bookingId\" = $1")
-                .rxExecute(Tuple.of(bookingId))
-                .map(RowSet::rowCount);
+    protected Booking toBooking(Row row, List<LocalDate> dates) {
+        return Booking.builder()
+                .id(row.getString("id"))
+                .email(row.getString("email"))
+                .firstName(row.getString("firstname"))
+                .lastName(row.getString("lastname"))
+                .dates(dates)
+                .build();
+    }
 
+    /**
+     * delete the booking and its nights and write its CANCEL event in one statement, it needs no explicit transaction.
+     * @param eventStatement writes the rows of the event cte, with the origin as $2, see BookingEventPublisher#appendStatement
+     * @return the freed nights, empty if there is no such booking
+     */
+    public Maybe<List<LocalDate>> cancelBooking(SqlClient client, String bookingId, String origin, String eventStatement) {
+        return client.preparedQuery("WITH booking AS (DELETE FROM \"BOOKING\" WHERE id = $1 RETURNING id), " +
+                freedDates() + ", " +
+                "event AS (SELECT id AS \"bookingId\", 'CANCEL' AS action, array(SELECT date FROM freed ORDER BY date) AS dates FROM booking), " +
+                "appended AS (" + eventStatement + ") " +
+                "SELECT e.dates, (SELECT count(*) FROM appended) AS events FROM event e")
+                .rxExecute(Tuple.of(bookingId, origin))
+                .flatMapMaybe(rows -> rows.size() == 0 ? Maybe.empty() : Maybe.just(Arrays.asList(rows.iterator().next().getLocalDateArray("dates"))));
     }
 
-    public Maybe<String> bookDate(SqlClient client, LocalDate date, String bookingId) {
-        return client.preparedQuery("INSERT INTO \"BOOKING_DATE\"( \"date\", \"bookingId\") VALUES ($1, $2)")
-                .rxExecute(Tuple.of(date, bookingId))
-                .filter(rowSet -> rowSet.rowCount() > 0)
-                .map(c -> bookingId);
+    /**
+     * cte named freed deleting the nights of the booking $1 and returning their date
+     */
+    protected String freedDates() {
+        return "freed AS (DELETE FROM \"BOOKING_DATE\" WHERE \"bookingId\" = $1 RETURNING date)";
     }
 
-    public Maybe<Booking> updateBookingInfo(SqlClient client, Booking booking) {
-        return client.preparedQuery("UPDATE \"BOOKING\" SET \"email\"=$2, \"firstname\"=$3, \"lastname\"=$4 where id = $1")
-                .rxExecute(Tuple.of(booking.getId(), booking.getEmail(), booking.getFirstName(), booking.getLastName()))
-                .filter(rowSet -> rowSet.rowCount() > 0)
+    /**
+     * update the booking information and write its UPDATE event in one statement, it needs no explicit transaction.
+     * @param eventStatement writes the rows of the event cte, with the origin as $2, see BookingEventPublisher#appendStatement
+     * @return empty if there is no such booking
+     */
+    public Maybe<Booking> updateBookingInfo(SqlClient client, Booking booking, String origin, String eventStatement) {
+        return client.preparedQuery("WITH booking AS (UPDATE \"BOOKING\" SET \"email\"=$3, \"firstname\"=$4, \"lastname\"=$5 WHERE id = $1 RETURNING id), " +
+                "event AS (SELECT id AS \"bookingId\", 'UPDATE' AS action, '{}'::date[] AS dates FROM booking), " +
+                "appended AS (" + eventStatement + ") " +
+                "SELECT e.\"bookingId\", (SELECT count(*) FROM appended) AS events FROM event e")
+                .rxExecute(Tuple.of(booking.getId(), origin, booking.getEmail(), booking.getFirstName(), booking.getLastName()))
+                .filter(rowSet -> rowSet.size() > 0)
                 .map(c -> booking);
     }
 
-    public Single<Booking> createBookingInfo(SqlClient client, Booking booking) {
-        return client.preparedQuery("INSERT INTO \"BOOKING\"( \"id\", \"email\", \"firstname\", \"lastname\") VALUES ($1, $2, $3, $4)")
-                .rxExecute(Tuple.of(booking.getId(), booking.getEmail(), booking.getFirstName(), booking.getLastName()))
+    /**
+     * move the booking to the given nights in one statement, it needs no explicit transaction:
+     * only the added nights are inserted and only the removed ones are deleted,
+     * with the CANCEL event of the removed nights and the BOOK event of the added ones.
+     * if one of the added nights is already booked the statement fails with a PK violation and nothing is changed
+     * @param eventStatement writes the rows of the event cte, with the origin as $2, see BookingEventPublisher#appendStatement
+     * @return the nights added and removed, empty if there is no such booking
+     */
+    public Maybe<BookingDatesChange> rescheduleBooking(SqlClient client, String bookingId, List<LocalDate> dates,
+                                                       String origin, String eventStatement) {
+        return client.preparedQuery("WITH booking AS (SELECT id FROM \"BOOKING\" WHERE id = $1 FOR UPDATE), " +
+                changedDates() + ", " +
+                "event AS (SELECT * FROM (" +
+                "SELECT id AS \"bookingId\", 'CANCEL' AS action, array(SELECT date FROM removed ORDER BY date) AS dates FROM booking " +
+                "UNION ALL SELECT id, 'BOOK', array(SELECT date FROM added ORDER BY date) FROM booking) e WHERE cardinality(dates) > 0), " +
+                "appended AS (" + eventStatement + ") " +
+                "SELECT array(SELECT date FROM added ORDER BY date) AS added, array(SELECT date FROM removed ORDER BY date) AS removed, " +
+                "(SELECT count(*) FROM appended) AS events FROM booking")
+                .rxExecute(Tuple.of(bookingId, origin, dates.toArray(new LocalDate[0])))
+                .flatMapMaybe(rows -> rows.size() == 0 ? Maybe.empty() : Maybe.just(rows.iterator().next()))
+                .map(row -> new BookingDatesChange(Arrays.asList(row.getLocalDateArray("added")),
+                        Arrays.asList(row.getLocalDateArray("removed"))));
+    }
+
+    /**
+     * ctes named added and removed changing the nights of the booking $1 to the dates $3 and returning the changed dates
+     */
+    protected String changedDates() {
+        return "previous AS (SELECT date FROM \"BOOKING_DATE\" WHERE \"bookingId\" = $1), " +
+                "removed AS (DELETE FROM \"BOOKING_DATE\" WHERE \"bookingId\" = $1 AND date <> ALL($3::date[]) RETURNING date), " +
+                // dates are inserted in order to avoid db deadlock
+                "added AS (INSERT INTO \"BOOKING_DATE\"( \"date\", \"bookingId\") SELECT d, b.id FROM booking b, unnest($3::date[]) AS d " +
+                "WHERE d NOT IN (SELECT date FROM previous) ORDER BY d RETURNING date)";
+    }
+
+    /**
+     * insert the booking and all its dates in one round trip.
+     * if one of the dates is already booked the statement fails with a PK violation and nothing is inserted
+     */
+    public Single<Booking> createBooking(SqlClient client, Booking booking, List<LocalDate> dates) {
+        return client.preparedQuery("WITH b AS (INSERT INTO \"BOOKING\"( \"id\", \"email\", \"firstname\", \"lastname\") VALUES ($1, $2, $3, $4) RETURNING id) " +
+                // dates are inserted in order to avoid db deadlock
+                "INSERT INTO \"BOOKING_DATE\"( \"date\", \"bookingId\") SELECT d, b.id FROM b, unnest($5::date[]) AS d ORDER BY d")
+                .rxExecute(Tuple.of(booking.getId(), booking.getEmail(), booking.getFirstName(), booking.getLastName(),
+                        dates.toArray(new LocalDate[0])))
                 .filter(rowSet -> rowSet.rowCount() > 0)
                 .map(c -> booking).toSingle();
     }
@@ -0,0 +1,79 @@
+package org.bin2.island.booking.repository;
+
+import io.micronaut.context.annotation.Replaces;
+import io.micronaut.context.annotation.Requires;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.vertx.reactivex.sqlclient.SqlClient;
+import io.vertx.reactivex.sqlclient.Tuple;
+import lombok.extern.slf4j.Slf4j;
+import org.bin2.island.booking.model.Booking;
+
+import javax.inject.Singleton;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * store one daterange per booking instead of one row per night (booking.storage=range).
+ * overlapping bookings are rejected by the exclusion constraint of "BOOKING_RANGE"
+ */
+@Singleton
+@Slf4j
+@Replaces(BookingRepository.class)
+@Requires(property = "booking.storage", value = "range")
+public class RangeBookingRepository extends BookingRepository {
+
+    @Override
+    public Flowable<LocalDate> bookedDates(SqlClient client, LocalDate from, LocalDate to) {
+        return client.preparedQuery("select d::date as date from \"BOOKING_RANGE\", " +
+                "generate_series(greatest(lower(stay), $1), least(upper(stay) - 1, $2), interval '1 day') as d " +
+                "where stay && daterange($1, $2, '[]')")
+                .rxExecute(Tuple.of(from, to))
+                .toFlowable().flatMap(rows -> Flowable.fromIterable(rows))
+                .map(row -> row.getLocalDate("date"));
+    }
+
+    @Override
+    public Maybe<Booking> findBooking(SqlClient client, String bookingId) {
+        return client.preparedQuery("SELECT b.id, b.email, b.firstname, b.lastname, lower(r.stay) as start, upper(r.stay) as end " +
+                "FROM \"BOOKING\" b LEFT JOIN \"BOOKING_RANGE\" r ON r.\"bookingId\" = b.id WHERE b.id = $1")
+                .rxExecute(Tuple.of(bookingId))
+                .flatMapMaybe(rows -> rows.size() == 0 ? Maybe.empty() : Maybe.just(rows.iterator().next()))
+                .map(row -> toBooking(row, row.getLocalDate("start") == null ? List.of()
+                        : row.getLocalDate("start").datesUntil(row.getLocalDate("end")).collect(Collectors.toList())));
+    }
+
+    @Override
+    protected String freedDates() {
+        return "stay AS (DELETE FROM \"BOOKING_RANGE\" WHERE \"bookingId\" = $1 RETURNING stay), " +
+                "freed AS (SELECT d::date AS date FROM stay, generate_series(lower(stay.stay), upper(stay.stay) - 1, interval '1 day') AS d)";
+    }
+
+    /**
+     * the range is moved, the exclusion constraint only checks it against the other bookings
+     */
+    @Override
+    protected String changedDates() {
+        return "previous AS (SELECT stay FROM \"BOOKING_RANGE\" WHERE \"bookingId\" = $1), " +
+                "moved AS (UPDATE \"BOOKING_RANGE\" SET stay = daterange(($3::date[])[1], ($3::date[])[cardinality($3::date[])] + 1) " +
+                "WHERE \"bookingId\" = $1 RETURNING stay), " +
+                "removed AS (SELECT d::date AS date FROM previous, generate_series(lower(previous.stay), upper(previous.stay) - 1, interval '1 day') AS d " +
+                "WHERE d::date <> ALL($3::date[])), " +
+                "added AS (SELECT d AS date FROM unnest($3::date[]) AS d WHERE NOT EXISTS (SELECT 1 FROM previous WHERE previous.stay @> d))";
+    }
+
+    /**
+     * the dates are expected to be consecutive
+     */
+    @Override
+    public Single<Booking> createBooking(SqlClient client, Booking booking, List<LocalDate> dates) {
+        return client.preparedQuery("WITH b AS (INSERT INTO \"BOOKING\"( \"id\", \"email\", \"firstname\", \"lastname\") VALUES ($1, $2, $3, $4) RETURNING id) " +
+                "INSERT INTO \"BOOKING_RANGE\"( \"bookingId\", stay) SELECT b.id, daterange($5, $6) FROM b")
+                .rxExecute(Tuple.of(booking.getId(), booking.getEmail(), booking.getFirstName(), booking.getLastName(),
+                        dates.get(0), dates.get(dates.size() - 1).plusDays(1)))
+                .filter(rowSet -> rowSet.rowCount() > 0)
+                .map(c -> booking).toSingle();
+    }
+}
@@ -0,0 +1,370 @@
+package org.bin2.island.booking.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.scheduling.annotation.Scheduled;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import io.vertx.reactivex.sqlclient.SqlClient;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.bin2.island.booking.repository.BookingRepository;
+
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * holds the availability index of the booking window.
+ * the index is either reloaded from the db or patched in place with the dates of a booking event.
+ * it covers one more day than the booking window so that at midnight the window can be rolled
+ * without waiting on the db, the newly opened spare day is then preloaded in background.
+ * the reads can come from a replica lagging behind the patches: the patches of the last max-lag
+ * are journaled and applied again on top of what is read
+ */
+@Singleton
+@Slf4j
+public class AvailabilityCache {
+    private final ReadPool readPool;
+    private final BookingRepository bookingRepository;
+    private final BookingWindow bookingWindow;
+    private final AtomicLong version = new AtomicLong();
+    /**
+     * first epoch day of the last roll, a roll to a given day is only started once
+     */
+    private final AtomicLong rolledTo = new AtomicLong(Long.MIN_VALUE);
+
+    private volatile Single<AvailabilityIndex> index;
+    /**
+     * the published index once resolved, null while it is loading
+     */
+    private volatile AvailabilityIndex settled;
+    /**
+     * last index published as a change
+     */
+    private AvailabilityIndex notified;
+    private final FlowableProcessor<AvailabilityChange> changes = PublishProcessor.<AvailabilityChange>create().toSerialized();
+
+    private final Duration maxLag;
+    /**
+     * patches of the last max-lag and of the reads still running, oldest first
+     */
+    private final Deque<JournaledPatch> journal = new ArrayDeque<>();
+    /**
+     * start of the running reads, in nanoseconds
+     */
+    private final List<Long> reads = new ArrayList<>();
+
+    private final Duration refreshInterval;
+    private final AtomicBoolean refreshRequested = new AtomicBoolean();
+    private final AtomicLong refreshRequests = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private volatile long lastRefresh = System.nanoTime();
+
+    private final Counter hits;
+    private final Counter waits;
+    private final Timer loadTimer;
+
+    public AvailabilityCache(BookingRepository bookingRepository, ReadPool readPool, BookingWindow bookingWindow,
+                             @Value("${booking.cache.refresh-interval:500ms}") Duration refreshInterval,
+                             @Value("${booking.read-pool.max-lag:5s}") Duration maxLag,
+                             MeterRegistry registry) {
+        this.bookingRepository = bookingRepository;
+        this.readPool = readPool;
+        this.bookingWindow = bookingWindow;
+        this.refreshInterval = refreshInterval;
+        this.maxLag = maxLag;
+        this.hits = registry.counter("booking.cache.reads", "result", "hit");
+        this.waits = registry.counter("booking.cache.reads", "result", "wait");
+        this.loadTimer = Timer.builder("booking.cache.load")
+                .description("full reload of the availability index from the db")
+                .publishPercentileHistogram()
+                .register(registry);
+        FunctionCounter.builder("booking.cache.refreshes", this, AvailabilityCache::getRefreshes)
+                .description("full reloads of the availability index")
+                .register(registry);
+        FunctionCounter.builder("booking.cache.refreshes.coalesced", this, AvailabilityCache::getCoalescedRefreshes)
+                .description("reload requests served by another reload")
+                .register(registry);
+        publish(load());
+    }
+
+    public Single<AvailabilityIndex> get() {
+        // a read waits only while the index is loaded or patched
+        (settled != null ? hits : waits).increment();
+        return index.doOnSuccess(i -> {
+            if (i.getStartDay() < bookingWindow.minDate().toEpochDay()) {
+                // the scheduled roll is late, the current index is still served while rolling
+                roll();
+            }
+        });
+    }
+
+    /**
+     * @return the current index if it is already loaded, never waits on the db
+     */
+    public Optional<AvailabilityIndex> peek() {
+        return Optional.ofNullable(settled);
+    }
+
+    /**
+     * hot stream of the changes, the changes are emitted once the new index is loaded
+     */
+    public Flowable<AvailabilityChange> changes() {
+        return changes;
+    }
+
+    /**
+     * full reload from the db
+     */
+    public synchronized void refresh() {
+        lastRefresh = System.nanoTime();
+        refreshes.incrementAndGet();
+        publish(load());
+    }
+
+    /**
+     * ask for a full reload. there is at most one reload per refresh-interval and never two at the same time,
+     * the requests received in the meantime are served by the next reload
+     */
+    public void requestRefresh() {
+        refreshRequests.incrementAndGet();
+        refreshRequested.set(true);
+        refreshIfRequested();
+    }
+
+    @Scheduled(fixedDelay = "${booking.cache.refresh-interval:500ms}")
+    public synchronized void refreshIfRequested() {
+        // settled is null while a load is running
+        if (settled != null && System.nanoTime() - lastRefresh >= refreshInterval.toNanos()
+                && refreshRequested.compareAndSet(true, false)) {
+            refresh();
+            log.debug("availability cache reloaded {} times, {} requests coalesced", getRefreshes(), getCoalescedRefreshes());
+        }
+    }
+
+    /**
+     * @return number of full reloads
+     */
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    /**
+     * @return number of reload requests served by another reload
+     */
+    public long getCoalescedRefreshes() {
+        return refreshRequests.get() - refreshes.get();
+    }
+
+    /**
+     * mark the dates as booked or available without going to the db
+     */
+    public void patch(Collection<LocalDate> dates, boolean booked) {
+        patch(booked ? dates : List.of(), booked ? List.of() : dates);
+    }
+
+    /**
+     * mark the dates as booked and the released ones as available without going to the db
+     */
+    public void patch(Collection<LocalDate> booked, Collection<LocalDate> released) {
+        patch(booked, released, true);
+    }
+
+    /**
+     * @param confirmed false for the events of another node, the nights they book are confirmed on the db before a conflict
+     * @see AvailabilityIndex#isUnconfirmed(long)
+     */
+    public synchronized void patch(Collection<LocalDate> booked, Collection<LocalDate> released, boolean confirmed) {
+        journal(booked, released, confirmed);
+        publish(index.map(i -> i.patch(booked, released, confirmed, version.incrementAndGet())));
+        // the patch is applied right away so the chain of patches does not grow between two reads
+        index.subscribe((i, e) -> {});
+    }
+
+    /**
+     * the nights were read booked on the primary. a night released since by an event stays released,
+     * the availability does not change so the version is kept
+     */
+    public synchronized void confirm(Collection<LocalDate> dates) {
+        publish(index.map(i -> i.confirm(dates, i.getVersion())));
+        index.subscribe((i, e) -> {});
+    }
+
+    /**
+     * move the index to the current booking window, the days that are still in the window are kept
+     * and only the newly opened days are read from the db.
+     * the reads seeing a late index all call it at once, only the first one rolls and preloads
+     */
+    @Scheduled(cron = "${booking.window.roll-cron:0 0 0 * * *}")
+    public void roll() {
+        LocalDate minDate = bookingWindow.minDate();
+        LocalDate maxDate = bookingWindow.maxDate().plus(1, ChronoUnit.DAYS);
+        long previous = rolledTo.get();
+        if (previous >= minDate.toEpochDay() || !rolledTo.compareAndSet(previous, minDate.toEpochDay())) {
+            return;
+        }
+        index.subscribe(current -> {
+            if (current.getStartDay() >= minDate.toEpochDay()) {
+                return;
+            }
+            LocalDate opened = LocalDate.ofEpochDay(current.getStartDay() + current.getLength());
+            if (opened.isBefore(minDate)) {
+                requestRefresh();
+            } else {
+                long rolled = shift(minDate, maxDate);
+                read(c -> bookingRepository.bookedDates(c, opened, maxDate).toList().toFlowable())
+                        .subscribe(read -> preloaded(rolled, read.getResult(), read.getStart()), e -> {
+                            log.error("unable to preload the availability from {}", opened, e);
+                            // the opened days are shown available until they are read
+                            requestRefresh();
+                        });
+            }
+        }, e -> {
+            log.error("unable to roll the availability window", e);
+            // the next read tries again
+            rolledTo.compareAndSet(minDate.toEpochDay(), previous);
+        });
+    }
+
+    private synchronized long shift(LocalDate minDate, LocalDate maxDate) {
+        publish(index.map(i -> i.getStartDay() == minDate.toEpochDay() ? i : i.shift(minDate, maxDate, version.incrementAndGet())));
+        index.subscribe((i, e) -> {});
+        return version.get();
+    }
+
+    private synchronized void preloaded(long rolledVersion, List<LocalDate> dates, long readStart) {
+        if (version.get() == rolledVersion) {
+            long preloaded = version.incrementAndGet();
+            publish(index.map(i -> replay(i.patch(dates, List.of(), preloaded), readStart)));
+            index.subscribe((i, e) -> {});
+        } else {
+            // the index was updated while the new days were loading, they may be outdated
+            requestRefresh();
+        }
+    }
+
+    private Single<AvailabilityIndex> load() {
+        LocalDate minDate = bookingWindow.minDate();
+        LocalDate maxDate = bookingWindow.maxDate().plus(1, ChronoUnit.DAYS);
+        return Timings.time(loadTimer, read(c -> bookingRepository.bookedDates(c, minDate, maxDate)
+                .collect(() -> AvailabilityIndex.builder(minDate, maxDate), AvailabilityIndex.Builder::book).toFlowable())
+                .singleOrError())
+                // the index is built once and published as a whole, readers never see a partial index
+                .map(read -> replay(read.getResult().build(version.incrementAndGet()), read.getStart()));
+    }
+
+    /**
+     * run the read on the read pool, the patches from max-lag before its start are journaled until it is done
+     */
+    private <T> Flowable<Read<T>> read(Function<SqlClient, Flowable<T>> query) {
+        return Flowable.defer(() -> {
+            long start = readStarted();
+            return readPool.withConnection(query)
+                    .map(result -> new Read<>(start, result))
+                    .doFinally(() -> readDone(start));
+        });
+    }
+
+    private synchronized long readStarted() {
+        long start = System.nanoTime();
+        reads.add(start);
+        return start;
+    }
+
+    private synchronized void readDone(long start) {
+        reads.remove(Long.valueOf(start));
+        trimJournal();
+    }
+
+    private synchronized void journal(Collection<LocalDate> booked, Collection<LocalDate> released, boolean confirmed) {
+        journal.addLast(new JournaledPatch(System.nanoTime(), booked, released, confirmed));
+        trimJournal();
+    }
+
+    private synchronized void trimJournal() {
+        long oldest = reads.stream().mapToLong(Long::longValue).min().orElse(System.nanoTime()) - maxLag.toNanos();
+        while (!journal.isEmpty() && journal.peekFirst().getTime() - oldest < 0) {
+            journal.removeFirst();
+        }
+    }
+
+    /**
+     * apply again, in order, the patches from max-lag before readStart: the replica may not have seen them yet.
+     * the patches received during the read are applied on top of it anyway, they are not lost if they are seen twice
+     */
+    private synchronized AvailabilityIndex replay(AvailabilityIndex read, long readStart) {
+        long since = readStart - maxLag.toNanos();
+        AvailabilityIndex replayed = read;
+        for (JournaledPatch patch : journal) {
+            if (patch.getTime() - since >= 0) {
+                replayed = replayed.patch(patch.getBooked(), patch.getReleased(), patch.isConfirmed(), read.getVersion());
+            }
+        }
+        return replayed;
+    }
+
+    private void publish(Single<AvailabilityIndex> source) {
+        AtomicReference<Single<AvailabilityIndex>> published = new AtomicReference<>();
+        Single<AvailabilityIndex> cached = source
+                .doOnSuccess(i -> settle(published.get(), i))
+                .doOnError(e -> failed(published.get(), e))
+                .cache();
+        published.set(cached);
+        this.settled = null;
+        this.index = cached;
+    }
+
+    private synchronized void settle(Single<AvailabilityIndex> published, AvailabilityIndex resolved) {
+        // once resolved the index is republished as a constant so it does not hold the previous loads
+        if (index == published) {
+            index = Single.just(resolved);
+            settled = resolved;
+            AvailabilityChange change = AvailabilityChange.between(notified, resolved);
+            notified = resolved;
+            if (!change.isEmpty()) {
+                changes.onNext(change);
+            }
+        }
+    }
+
+    private synchronized void failed(Single<AvailabilityIndex> published, Throwable e) {
+        log.error("unable to load the availability index", e);
+        if (index == published) {
+            publish(load());
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class Read<T> {
+        private final long start;
+        private final T result;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class JournaledPatch {
+        private final long time;
+        private final Collection<LocalDate> booked;
+        private final Collection<LocalDate> released;
+        private final boolean confirmed;
+    }
+}
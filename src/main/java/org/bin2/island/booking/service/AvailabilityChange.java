@@ -0,0 +1,31 @@
+package org.bin2.island.booking.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * change of the availability index, either the dates released and booked since the previous index
+ * or a reset when the window has moved
+ */
+@Data
+@AllArgsConstructor
+public class AvailabilityChange {
+    private final AvailabilityIndex index;
+    private final boolean reset;
+    private final List<LocalDate> available;
+    private final List<LocalDate> booked;
+
+    static AvailabilityChange between(AvailabilityIndex previous, AvailabilityIndex next) {
+        if (previous == null || !previous.sameWindow(next)) {
+            return new AvailabilityChange(next, true, List.of(), List.of());
+        }
+        return new AvailabilityChange(next, false, previous.bookedSince(next), next.bookedSince(previous));
+    }
+
+    public boolean isEmpty() {
+        return !reset && available.isEmpty() && booked.isEmpty();
+    }
+}
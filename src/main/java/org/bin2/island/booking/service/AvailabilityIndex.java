@@ -0,0 +1,284 @@
+package org.bin2.island.booking.service;
+
+import com.google.common.base.Preconditions;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * immutable bitmap of the booked nights, one bit per epoch day starting at {@link #getStartDay()}.
+ * days outside of the indexed window are considered as available.
+ * a second bitmap marks the nights booked by the event of another node and not confirmed since: the events of two
+ * nodes are not ordered between them, a CANCEL received before the BOOK of the same night leaves it booked here
+ */
+public final class AvailabilityIndex {
+    private final long startDay;
+    private final int length;
+    private final long[] words;
+    private final long[] unconfirmed;
+    private final long version;
+
+    private AvailabilityIndex(long startDay, int length, long[] words, long[] unconfirmed, long version) {
+        this.startDay = startDay;
+        this.length = length;
+        this.words = words;
+        this.unconfirmed = unconfirmed;
+        this.version = version;
+    }
+
+    /**
+     * @param from first indexed day
+     * @param to last indexed day (included)
+     */
+    public static Builder builder(LocalDate from, LocalDate to) {
+        Preconditions.checkArgument(!to.isBefore(from));
+        return new Builder(from.toEpochDay(), (int) (to.toEpochDay() - from.toEpochDay() + 1));
+    }
+
+    public long getStartDay() {
+        return startDay;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isBooked(LocalDate date) {
+        return isBooked(date.toEpochDay());
+    }
+
+    public boolean isBooked(long epochDay) {
+        long offset = epochDay - startDay;
+        return offset >= 0 && offset < length && (words[(int) (offset >>> 6)] & (1L << offset)) != 0;
+    }
+
+    /**
+     * @return the first available epoch day in [fromDay, toDay[ or -1 if there is none
+     */
+    public long nextAvailable(long fromDay, long toDay) {
+        long day = fromDay;
+        while (day < toDay) {
+            long offset = day - startDay;
+            if (offset < 0 || offset >= length) {
+                return day;
+            }
+            int word = (int) (offset >>> 6);
+            // the bits after length are never set so they are reported as available, which is the expected behavior
+            long free = ~words[word] & (-1L << offset);
+            if (free != 0) {
+                long candidate = startDay + ((long) word << 6) + Long.numberOfTrailingZeros(free);
+                return candidate < toDay ? candidate : -1;
+            }
+            day = startDay + ((long) (word + 1) << 6);
+        }
+        return -1;
+    }
+
+    /**
+     * @return the first booked epoch day in [fromDay, toDay[ or -1 if there is none
+     */
+    public long nextBooked(long fromDay, long toDay) {
+        return next(words, fromDay, toDay);
+    }
+
+    /**
+     * @return true if the night was booked by the event of another node and not confirmed since
+     */
+    public boolean isUnconfirmed(long epochDay) {
+        long offset = epochDay - startDay;
+        return offset >= 0 && offset < length && (unconfirmed[(int) (offset >>> 6)] & (1L << offset)) != 0;
+    }
+
+    private long next(long[] bits, long fromDay, long toDay) {
+        long day = Math.max(fromDay, startDay);
+        long end = Math.min(toDay, startDay + length);
+        while (day < end) {
+            long offset = day - startDay;
+            int word = (int) (offset >>> 6);
+            long booked = bits[word] & (-1L << offset);
+            if (booked != 0) {
+                long candidate = startDay + ((long) word << 6) + Long.numberOfTrailingZeros(booked);
+                return candidate < end ? candidate : -1;
+            }
+            day = startDay + ((long) (word + 1) << 6);
+        }
+        return -1;
+    }
+
+    public boolean sameWindow(AvailabilityIndex other) {
+        return startDay == other.startDay && length == other.length;
+    }
+
+    /**
+     * @return the days booked in this index and available in the other one, both must cover the same window
+     */
+    public List<LocalDate> bookedSince(AvailabilityIndex other) {
+        Preconditions.checkArgument(sameWindow(other));
+        List<LocalDate> booked = new ArrayList<>();
+        for (int word = 0; word < words.length; word++) {
+            long diff = words[word] & ~other.words[word];
+            while (diff != 0) {
+                booked.add(LocalDate.ofEpochDay(startDay + ((long) word << 6) + Long.numberOfTrailingZeros(diff)));
+                diff &= diff - 1;
+            }
+        }
+        return booked;
+    }
+
+    /**
+     * lazy view of the available dates in [from, to[
+     */
+    public Iterable<LocalDate> availableDates(LocalDate from, LocalDate to) {
+        long fromDay = from.toEpochDay();
+        long toDay = to.toEpochDay();
+        return () -> new Iterator<>() {
+            private long next = nextAvailable(fromDay, toDay);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public LocalDate next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                LocalDate date = LocalDate.ofEpochDay(next);
+                next = nextAvailable(next + 1, toDay);
+                return date;
+            }
+        };
+    }
+
+    /**
+     * @return one bit per night of [from, to[, bit i (byte i / 8, least significant bit first) is set when from + i is available
+     */
+    public byte[] availableBitmap(LocalDate from, LocalDate to) {
+        long fromDay = from.toEpochDay();
+        int days = (int) Math.max(0, to.toEpochDay() - fromDay);
+        byte[] bitmap = new byte[(days + 7) >>> 3];
+        for (int i = 0; i < days; i++) {
+            if (!isBooked(fromDay + i)) {
+                bitmap[i >>> 3] |= 1 << (i & 7);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return a copy of this index where the given dates are marked as booked or available
+     */
+    public AvailabilityIndex patch(Iterable<LocalDate> dates, boolean booked, long version) {
+        return booked ? patch(dates, List.of(), version) : patch(List.of(), dates, version);
+    }
+
+    /**
+     * @return a copy of this index where the dates are marked as booked and the released ones as available
+     */
+    public AvailabilityIndex patch(Iterable<LocalDate> booked, Iterable<LocalDate> released, long version) {
+        return patch(booked, released, true, version);
+    }
+
+    /**
+     * @param confirmed false when the dates come from the event of another node, the booked ones are then unconfirmed
+     * @return a copy of this index where the dates are marked as booked and the released ones as available
+     */
+    public AvailabilityIndex patch(Iterable<LocalDate> booked, Iterable<LocalDate> released, boolean confirmed, long version) {
+        long[] patched = words.clone();
+        long[] patchedUnconfirmed = unconfirmed.clone();
+        for (LocalDate date : released) {
+            long offset = date.toEpochDay() - startDay;
+            if (offset >= 0 && offset < length) {
+                patched[(int) (offset >>> 6)] &= ~(1L << offset);
+                patchedUnconfirmed[(int) (offset >>> 6)] &= ~(1L << offset);
+            }
+        }
+        for (LocalDate date : booked) {
+            long offset = date.toEpochDay() - startDay;
+            if (offset >= 0 && offset < length) {
+                patched[(int) (offset >>> 6)] |= 1L << offset;
+                if (confirmed) {
+                    patchedUnconfirmed[(int) (offset >>> 6)] &= ~(1L << offset);
+                } else {
+                    patchedUnconfirmed[(int) (offset >>> 6)] |= 1L << offset;
+                }
+            }
+        }
+        return new AvailabilityIndex(startDay, length, patched, patchedUnconfirmed, version);
+    }
+
+    /**
+     * @return a copy of this index where the nights are no longer unconfirmed, booked or not
+     */
+    public AvailabilityIndex confirm(Iterable<LocalDate> dates, long version) {
+        long[] patchedUnconfirmed = unconfirmed.clone();
+        for (LocalDate date : dates) {
+            long offset = date.toEpochDay() - startDay;
+            if (offset >= 0 && offset < length) {
+                patchedUnconfirmed[(int) (offset >>> 6)] &= ~(1L << offset);
+            }
+        }
+        return new AvailabilityIndex(startDay, length, words, patchedUnconfirmed, version);
+    }
+
+    /**
+     * @return a copy of this index covering [from, to], the days that were not covered are available
+     */
+    public AvailabilityIndex shift(LocalDate from, LocalDate to, long version) {
+        Builder builder = builder(from, to);
+        for (long day = Math.max(startDay, from.toEpochDay()); day < startDay + length; day++) {
+            if (isBooked(day)) {
+                builder.book(day);
+            }
+            if (isUnconfirmed(day)) {
+                builder.unconfirmed(day);
+            }
+        }
+        return builder.build(version);
+    }
+
+    public static final class Builder {
+        private final long startDay;
+        private final int length;
+        private final long[] words;
+        private final long[] unconfirmed;
+
+        private Builder(long startDay, int length) {
+            this.startDay = startDay;
+            this.length = length;
+            this.words = new long[(length + 63) >>> 6];
+            this.unconfirmed = new long[words.length];
+        }
+
+        public Builder book(LocalDate date) {
+            return book(date.toEpochDay());
+        }
+
+        private Builder book(long epochDay) {
+            long offset = epochDay - startDay;
+            if (offset >= 0 && offset < length) {
+                words[(int) (offset >>> 6)] |= 1L << offset;
+            }
+            return this;
+        }
+
+        private void unconfirmed(long epochDay) {
+            long offset = epochDay - startDay;
+            if (offset >= 0 && offset < length) {
+                unconfirmed[(int) (offset >>> 6)] |= 1L << offset;
+            }
+        }
+
+        public AvailabilityIndex build(long version) {
+            return new AvailabilityIndex(startDay, length, words.clone(), unconfirmed.clone(), version);
+        }
+    }
+}
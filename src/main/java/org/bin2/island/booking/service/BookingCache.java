@@ -0,0 +1,50 @@
+package org.bin2.island.booking.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micronaut.context.annotation.Value;
+import io.reactivex.Maybe;
+import org.bin2.island.booking.model.Booking;
+
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * recently read bookings, bounded by booking.booking-cache.size and kept booking.booking-cache.ttl at most.
+ * the load itself is cached so concurrent reads of the same booking share one query,
+ * an invalidation drops the load so a read in flight never puts back an outdated booking
+ */
+@Singleton
+public class BookingCache {
+    private final Cache<String, Maybe<Booking>> bookings;
+
+    public BookingCache(@Value("${booking.booking-cache.size:10000}") long size,
+                        @Value("${booking.booking-cache.ttl:5m}") Duration ttl) {
+        this.bookings = CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public Maybe<Booking> get(String bookingId, Function<String, Maybe<Booking>> loader) {
+        return Maybe.defer(() -> bookings.asMap().computeIfAbsent(bookingId, id -> {
+            AtomicReference<Maybe<Booking>> load = new AtomicReference<>();
+            load.set(loader.apply(id)
+                    // a missing booking or a failure is not kept
+                    .doOnComplete(() -> bookings.asMap().remove(id, load.get()))
+                    .doOnError(e -> bookings.asMap().remove(id, load.get()))
+                    .cache());
+            return load.get();
+        }));
+    }
+
+    public void invalidate(String bookingId) {
+        bookings.invalidate(bookingId);
+    }
+
+    public void invalidateAll() {
+        bookings.invalidateAll();
+    }
+}
@@ -0,0 +1,52 @@
+package org.bin2.island.booking.service;
+
+import io.reactivex.Maybe;
+import io.reactivex.subjects.SingleSubject;
+
+import javax.inject.Singleton;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * in process claims on the nights being booked, keyed by epoch day.
+ * only one attempt at a time goes to the db for a given night, the overlapping attempts wait for its outcome:
+ * they fail fast if it booked and try again otherwise
+ */
+@Singleton
+public class BookingClaims {
+    private final ConcurrentMap<Long, Claim> claims = new ConcurrentHashMap<>();
+
+    /**
+     * @param attempt booking attempt, emits when the dates are booked
+     * @return the attempt result or empty if an overlapping attempt booked the dates first
+     */
+    public <T> Maybe<T> claim(List<LocalDate> dates, Maybe<T> attempt) {
+        return Maybe.defer(() -> {
+            Claim claim = new Claim();
+            for (int i = 0; i < dates.size(); i++) {
+                Claim other = claims.putIfAbsent(dates.get(i).toEpochDay(), claim);
+                if (other != null) {
+                    // nothing is held while waiting so there is no deadlock between attempts
+                    release(dates.subList(0, i), claim);
+                    return other.outcome.flatMapMaybe(booked -> booked ? Maybe.<T>empty() : claim(dates, attempt));
+                }
+            }
+            return attempt
+                    .doOnSuccess(t -> claim.booked.set(true))
+                    .doFinally(() -> release(dates, claim));
+        });
+    }
+
+    private void release(List<LocalDate> dates, Claim claim) {
+        dates.forEach(d -> claims.remove(d.toEpochDay(), claim));
+        claim.outcome.onSuccess(claim.booked.get());
+    }
+
+    private static class Claim {
+        private final AtomicBoolean booked = new AtomicBoolean();
+        private final SingleSubject<Boolean> outcome = SingleSubject.create();
+    }
+}
@@ -1,15 +1,20 @@
 package org.bin2.island.booking.service;
 
-import org.bin2.island.booking.model.BookingAction;
+import org.bin2.island.booking.model.BookingEvent;
 
 import io.micronaut.configuration.kafka.annotation.KafkaClient;
 import io.micronaut.configuration.kafka.annotation.KafkaKey;
 import io.micronaut.configuration.kafka.annotation.Topic;
+import io.reactivex.Single;
 
 @KafkaClient
 public interface BookingClient {
 
+    /**
+     * the events are keyed by origin node so the events of one node stay ordered on the same partition.
+     * the event is sent on subscription and emitted once acknowledged, the caller is never blocked
+     */
     @Topic("booking-update")
-    void sendEvent(@KafkaKey String bookingId, BookingAction action);
+    Single<BookingEvent> sendEvent(@KafkaKey String origin, BookingEvent event);
 
 }
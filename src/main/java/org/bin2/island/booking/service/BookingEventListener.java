@@ -1,20 +1,63 @@
 package org.bin2.island.booking.service;
 
-import io.micronaut.configuration.kafka.annotation.KafkaKey;
 import io.micronaut.configuration.kafka.annotation.KafkaListener;
 import io.micronaut.configuration.kafka.annotation.OffsetReset;
+import io.micronaut.configuration.kafka.annotation.OffsetStrategy;
 import io.micronaut.configuration.kafka.annotation.Topic;
+import io.micronaut.context.annotation.Requires;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.bin2.island.booking.model.BookingEvent;
 
-@KafkaListener(offsetReset =  OffsetReset.LATEST)
+import java.util.List;
+
+/**
+ * every node keeps its own availability cache so every node must see every event:
+ * each instance gets its own consumer group, starts from the latest offset and never commits,
+ * the cache is reloaded from the db on boot anyway.
+ * the records of a poll are received as one batch so they are applied to the cache at once
+ */
+@KafkaListener(groupId = "booking-cache", uniqueGroupId = true, offsetReset = OffsetReset.LATEST,
+        offsetStrategy = OffsetStrategy.DISABLED, batch = true)
+@Requires(property = "booking.events.transport", value = "kafka", defaultValue = "kafka")
 public class BookingEventListener {
+    static final String TOPIC = "booking-update";
+
     private final BookingService bookingService;
+    private volatile String groupId;
+    private volatile long lag = -1;
 
     public BookingEventListener(BookingService bookingService) {
         this.bookingService = bookingService;
     }
 
-    @Topic("booking-update")
-    public void receive(@KafkaKey String bookingId) {
-        bookingService.refreshCache();
+    @Topic(TOPIC)
+    public void receive(List<BookingEvent> events, Consumer<?, ?> consumer) {
+        bookingService.onBookingEvents(events);
+        groupId = consumer.groupMetadata().groupId();
+        lag = lag(consumer);
+    }
+
+    /**
+     * @return the consumer group of this node
+     */
+    public String getGroupId() {
+        return groupId;
+    }
+
+    /**
+     * @return number of records of the topic not received yet as of the last poll, -1 before the first poll
+     */
+    public long getLag() {
+        return lag;
+    }
+
+    private static long lag(Consumer<?, ?> consumer) {
+        // the fetcher keeps a per partition records-lag metric, there is no need to ask the broker for the end offsets
+        return consumer.metrics().entrySet().stream()
+                .filter(e -> "records-lag".equals(e.getKey().name()) && TOPIC.equals(e.getKey().tags().get("topic")))
+                .map(e -> e.getValue().metricValue())
+                .filter(v -> v instanceof Number && !Double.isNaN(((Number) v).doubleValue()))
+                .mapToLong(v -> ((Number) v).longValue())
+                .sum();
     }
 }
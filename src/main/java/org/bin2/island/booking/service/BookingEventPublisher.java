@@ -0,0 +1,47 @@
+package org.bin2.island.booking.service;
+
+import io.reactivex.Completable;
+import io.vertx.reactivex.sqlclient.SqlClient;
+import org.bin2.island.booking.model.BookingAction;
+import org.bin2.island.booking.model.BookingEvent;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * send the booking events to the other nodes, the transport is chosen with booking.events.transport:
+ * kafka (outbox relayed on the booking-update topic) or pg (NOTIFY on the booking_update channel)
+ */
+public interface BookingEventPublisher {
+
+    /**
+     * identify the events published by this node
+     */
+    String getOrigin();
+
+    default BookingEvent event(String bookingId, BookingAction action, List<LocalDate> dates) {
+        return BookingEvent.builder()
+                .bookingId(bookingId)
+                .action(action)
+                .dates(dates)
+                .origin(getOrigin())
+                .build();
+    }
+
+    /**
+     * write the event in the transaction of the booking, it is sent only if the transaction is committed
+     */
+    Completable append(SqlClient tx, BookingEvent event);
+
+    /**
+     * query writing the events of a statement changing the bookings (see BookingRepository#cancelBooking):
+     * it reads the "bookingId", action and dates columns of the cte named event, gets the origin as $2
+     * and returns one row per event written
+     */
+    String appendStatement();
+
+    /**
+     * called once the transaction of the appended event is committed, never waits
+     */
+    void committed(BookingEvent event);
+}
@@ -0,0 +1,172 @@
+package org.bin2.island.booking.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.scheduling.annotation.Scheduled;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import io.vertx.reactivex.pgclient.PgPool;
+import io.vertx.reactivex.sqlclient.SqlClient;
+import lombok.extern.slf4j.Slf4j;
+import org.bin2.island.booking.model.BookingAction;
+import org.bin2.island.booking.model.BookingEvent;
+import org.bin2.island.booking.repository.BookingOutboxRepository;
+import org.bin2.island.booking.repository.BookingOutboxRepository.OutboxEvent;
+
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * publish the events of the outbox on the booking-update topic.
+ * a node relays the events it has written, and the events left by another node for more than orphan-delay.
+ * the events are leased in a statement of their own, no transaction is open while kafka acknowledges them.
+ * a batch is sent at once, the acknowledged events are removed from the outbox and the lease of the others is released
+ * for the next relay
+ */
+@Singleton
+@Slf4j
+@Requires(property = "booking.events.transport", value = "kafka", defaultValue = "kafka")
+public class BookingEventRelay implements BookingEventPublisher {
+    private final String origin = UUID.randomUUID().toString();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean pending = new AtomicBoolean();
+
+    private final PgPool client;
+    private final BookingOutboxRepository outboxRepository;
+    private final BookingClient bookingClient;
+    private final AvailabilityCache availabilityCache;
+    private final BookingCache bookingCache;
+    private final Duration orphanDelay;
+    private final int batchSize;
+    private final Timer publishTimer;
+
+    public BookingEventRelay(PgPool client, BookingOutboxRepository outboxRepository, BookingClient bookingClient,
+                             AvailabilityCache availabilityCache, BookingCache bookingCache,
+                             @Value("${booking.events.orphan-delay:30s}") Duration orphanDelay,
+                             @Value("${booking.events.batch-size:100}") int batchSize,
+                             MeterRegistry registry) {
+        this.client = client;
+        this.outboxRepository = outboxRepository;
+        this.bookingClient = bookingClient;
+        this.availabilityCache = availabilityCache;
+        this.bookingCache = bookingCache;
+        this.orphanDelay = orphanDelay;
+        this.batchSize = batchSize;
+        this.publishTimer = Timer.builder("booking.events.publish")
+                .description("time for kafka to acknowledge a booking event")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @Override
+    public String getOrigin() {
+        return origin;
+    }
+
+    @Override
+    public Completable append(SqlClient tx, BookingEvent event) {
+        return outboxRepository.append(tx, event);
+    }
+
+    @Override
+    public String appendStatement() {
+        return outboxRepository.appendStatement();
+    }
+
+    @Override
+    public void committed(BookingEvent event) {
+        wakeUp();
+    }
+
+    /**
+     * ask for the outbox to be relayed, the caller never waits on it
+     */
+    public void wakeUp() {
+        pending.set(true);
+        drain();
+    }
+
+    @Scheduled(fixedDelay = "${booking.events.relay-interval:1s}")
+    public void relay() {
+        wakeUp();
+    }
+
+    private void drain() {
+        if (!running.compareAndSet(false, true)) {
+            // the running relay will see the pending flag
+            return;
+        }
+        pending.set(false);
+        relayBatch().subscribe(count -> {
+            running.set(false);
+            if (count == batchSize || pending.get()) {
+                drain();
+            }
+        }, e -> {
+            log.error("unable to relay the booking events", e);
+            running.set(false);
+        });
+    }
+
+    private Single<Integer> relayBatch() {
+        return outboxRepository.claim(client, origin, orphanDelay, batchSize).flatMap(claimed -> {
+            // only one batch is relayed at a time, its events are numbered when it is claimed
+            long first = sequence.get() + 1;
+            Set<Integer> acked = ConcurrentHashMap.newKeySet();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            return Flowable.range(0, claimed.size())
+                    // the whole batch is sent without waiting for the acknowledgments, in sequence order
+                    .flatMapCompletable(i -> publish(claimed.get(i).getEvent(), first + i)
+                            .doOnComplete(() -> acked.add(i))
+                            .doOnError(e -> failure.compareAndSet(null, e))
+                            .onErrorComplete(), false, Math.max(1, claimed.size()))
+                    .andThen(Single.defer(() -> {
+                        List<OutboxEvent> sent = new ArrayList<>();
+                        List<OutboxEvent> unsent = new ArrayList<>();
+                        for (int i = 0; i < claimed.size(); i++) {
+                            (acked.contains(i) ? sent : unsent).add(claimed.get(i));
+                        }
+                        // the idempotent producer sends nothing after a failed event of the partition: the sequences of
+                        // the unsent events are given again to the next batch and the receivers see no gap
+                        acked.stream().mapToInt(Integer::intValue).max().ifPresent(last -> sequence.set(first + last));
+                        return outboxRepository.delete(client, ids(sent))
+                                .andThen(outboxRepository.release(client, ids(unsent)))
+                                .andThen(Optional.ofNullable(failure.get()).<Single<Integer>>map(Single::error)
+                                        .orElse(Single.just(claimed.size())));
+                    }));
+        });
+    }
+
+    private Completable publish(BookingEvent event, long sequence) {
+        return Completable.defer(() -> {
+            if (!origin.equals(event.getOrigin())) {
+                // adopted from a node that did not relay it, it is not in the local caches yet
+                bookingCache.invalidate(event.getBookingId());
+                if (event.getAction() != BookingAction.UPDATE) {
+                    boolean book = event.getAction() == BookingAction.BOOK;
+                    availabilityCache.patch(book ? event.getDates() : List.of(), book ? List.of() : event.getDates(), false);
+                }
+            }
+            return Timings.time(publishTimer, bookingClient.sendEvent(origin, event.toBuilder().origin(origin).sequence(sequence).build()))
+                    .ignoreElement();
+        });
+    }
+
+    private static List<Long> ids(List<OutboxEvent> events) {
+        return events.stream().map(OutboxEvent::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,91 @@
+package org.bin2.island.booking.service;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.micronaut.scheduling.annotation.Scheduled;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.vertx.reactivex.pgclient.PgPool;
+import io.vertx.reactivex.sqlclient.SqlClient;
+import lombok.extern.slf4j.Slf4j;
+import org.bin2.island.booking.repository.BookingPartitionRepository;
+
+import javax.inject.Singleton;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * maintenance of the monthly partitions of "BOOKING_DATE": the partitions are created ahead of the booking window,
+ * and the ones ended for more than booking.partitions.retention are archived.
+ * the queries on "BOOKING_DATE" then only read the attached partitions, whatever the history of the db
+ */
+@Singleton
+@Slf4j
+@Requires(property = "booking.partitions.enabled", value = "true", defaultValue = "true")
+public class BookingPartitions {
+    private final PgPool client;
+    private final BookingPartitionRepository partitionRepository;
+    private final BookingWindow bookingWindow;
+    private final Period retention;
+
+    public BookingPartitions(PgPool client, BookingPartitionRepository partitionRepository, BookingWindow bookingWindow,
+                             @Value("${booking.partitions.retention:P3M}") String retention) {
+        this.client = client;
+        this.partitionRepository = partitionRepository;
+        this.bookingWindow = bookingWindow;
+        this.retention = Period.parse(retention);
+    }
+
+    @EventListener
+    public void onStartup(StartupEvent event) {
+        maintain();
+    }
+
+    @Scheduled(cron = "${booking.partitions.cron:0 30 0 * * *}")
+    public void maintain() {
+        maintain(LocalDate.now())
+                .subscribe(() -> {}, e -> log.error("unable to maintain the partitions of BOOKING_DATE", e));
+    }
+
+    Completable maintain(LocalDate today) {
+        // the month after the window so the partition exists before the window reaches it
+        YearMonth last = YearMonth.from(bookingWindow.maxDate()).plusMonths(1);
+        YearMonth archiveBefore = YearMonth.from(today.minus(retention));
+        return partitionRepository.partitions(client).toList()
+                .flatMapCompletable(attached -> {
+                    List<YearMonth> missing = Stream.iterate(YearMonth.from(today), m -> !m.isAfter(last), m -> m.plusMonths(1))
+                            .filter(m -> !attached.contains(m))
+                            .collect(Collectors.toList());
+                    List<YearMonth> expired = attached.stream()
+                            .filter(m -> m.isBefore(archiveBefore))
+                            .sorted()
+                            .collect(Collectors.toList());
+                    if (!missing.isEmpty() || !expired.isEmpty()) {
+                        log.info("creating the partitions {} and archiving {} of BOOKING_DATE", missing, expired);
+                    }
+                    return Flowable.fromIterable(missing)
+                            .concatMapCompletable(m -> step(m, false, tx -> partitionRepository.createPartition(tx, m)))
+                            .andThen(Flowable.fromIterable(expired)
+                                    .concatMapCompletable(m -> step(m, true, tx -> partitionRepository.archivePartition(tx, m))));
+                });
+    }
+
+    /**
+     * run one creation or archival in a transaction of its own, so the lock on "BOOKING_DATE" is only held for one month.
+     * the step is skipped while another node maintains the partitions, or if the partition was attached or detached since
+     */
+    private Completable step(YearMonth month, boolean attached, Function<SqlClient, Completable> step) {
+        return client.rxBegin().flatMapCompletable(tx -> partitionRepository.tryLock(tx)
+                .flatMapCompletable(locked -> !locked ? Completable.complete() : partitionRepository.partitions(tx).toList()
+                        .flatMapCompletable(partitions -> partitions.contains(month) == attached ? step.apply(tx) : Completable.complete()))
+                .andThen(tx.rxCommit())
+                .onErrorResumeNext(e -> tx.rxRollback().onErrorComplete().andThen(Completable.error(e))));
+    }
+}
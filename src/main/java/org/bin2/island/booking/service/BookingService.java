@@ -1,118 +1,357 @@
 package org.bin2.island.booking.service;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.reactivex.Completable;
 import io.reactivex.Flowable;
 import io.reactivex.Maybe;
 import io.reactivex.Single;
 import io.vertx.pgclient.PgException;
 import io.vertx.reactivex.pgclient.PgPool;
+import io.vertx.reactivex.sqlclient.SqlConnection;
 import lombok.extern.slf4j.Slf4j;
 import org.bin2.island.booking.model.Booking;
 import org.bin2.island.booking.model.BookingAction;
+import org.bin2.island.booking.model.BookingEvent;
 import org.bin2.island.booking.repository.BookingRepository;
 
+import javax.annotation.Nullable;
 import javax.inject.Singleton;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Singleton
 @Slf4j
 public class BookingService {
     private static final String PK_VIOLATION = "23505";
+    private static final String EXCLUSION_VIOLATION = "23P01";
     private final PgPool client;
     private final BookingRepository bookingRepository;
-    private final BookingClient bookingClient;
+    private final BookingEventPublisher eventPublisher;
 
-    private volatile Single<Set<LocalDate>> cacheBookedDates;
+    private final AvailabilityCache availabilityCache;
+    private final BookingClaims bookingClaims;
+    private final BookingCache bookingCache;
+    private final IdempotencyKeys idempotencyKeys;
+    private final EventSequences eventSequences;
 
-    public BookingService(BookingRepository bookingRepository,PgPool client, BookingClient bookingClient) {
+    private final Timer checkTimer;
+    private final Timer beginTimer;
+    private final Timer insertTimer;
+    private final Timer eventTimer;
+    private final Timer commitTimer;
+    private final Counter booked;
+    private final Counter cacheConflicts;
+    private final Counter staleNights;
+    private final Counter dbConflicts;
+    private final Counter rollbacks;
+    private final Counter rollbackExceptions;
+
+    public BookingService(BookingRepository bookingRepository,PgPool client, BookingEventPublisher eventPublisher,
+                          AvailabilityCache availabilityCache, BookingClaims bookingClaims, BookingCache bookingCache,
+                          IdempotencyKeys idempotencyKeys, EventSequences eventSequences, MeterRegistry registry) {
         this.bookingRepository = bookingRepository;
         this.client = client;
-        this.cacheBookedDates = bookedDates();
-        this.bookingClient = bookingClient;
+        this.eventPublisher = eventPublisher;
+        this.availabilityCache = availabilityCache;
+        this.bookingClaims = bookingClaims;
+        this.bookingCache = bookingCache;
+        this.idempotencyKeys = idempotencyKeys;
+        this.eventSequences = eventSequences;
+        this.checkTimer = stageTimer(registry, "check");
+        this.beginTimer = stageTimer(registry, "begin");
+        this.insertTimer = stageTimer(registry, "insert");
+        this.eventTimer = stageTimer(registry, "event");
+        this.commitTimer = stageTimer(registry, "commit");
+        this.booked = registry.counter("booking.book.booked");
+        this.cacheConflicts = registry.counter("booking.book.conflicts", "source", "cache");
+        this.dbConflicts = registry.counter("booking.book.conflicts", "source", "db");
+        this.staleNights = registry.counter("booking.cache.stale");
+        this.rollbacks = registry.counter("booking.book.rollbacks");
+        this.rollbackExceptions = registry.counter("booking.book.rollback.exceptions");
+    }
+
+    private static Timer stageTimer(MeterRegistry registry, String stage) {
+        return Timer.builder("booking.book.stage")
+                .description("duration of each stage of a booking attempt")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry);
     }
 
     public Flowable<LocalDate> getAvailableDates(LocalDate from, LocalDate to) {
-        return cacheBookedDates
-                .map(booked ->from.datesUntil(to).filter(d -> !booked.contains(d)).collect(Collectors.toList()))
-                .toFlowable().flatMap(l -> Flowable.fromIterable(l));
+        return availabilityCache.get()
+                .flattenAsFlowable(index -> index.availableDates(from, to));
+    }
+
+    /**
+     * the availability index, its version changes on every update
+     */
+    public Single<AvailabilityIndex> getAvailabilityIndex() {
+        return availabilityCache.get();
     }
 
+    public Flowable<AvailabilityChange> getAvailabilityChanges() {
+        return availabilityCache.changes();
+    }
+
+    /**
+     * @return the booking with its dates, read from the booking cache
+     */
+    public Maybe<Booking> getBooking(String bookingId) {
+        return bookingCache.get(bookingId, id -> bookingRepository.findBooking(client, id));
+    }
+
+    /**
+     * open every connection of the write pool and prepare the statements of the booking operations on each of them.
+     * the writes target a booking that does not exist or are rolled back, nothing is changed
+     */
+    public Completable prime(int connections) {
+        // the connections are held together so that each one is a different connection
+        return Flowable.range(0, connections)
+                .concatMapSingle(i -> client.rxGetConnection())
+                .toList()
+                .flatMapCompletable(opened -> Flowable.range(0, opened.size())
+                        // one night per connection, the rolled back inserts never wait on each other
+                        // (the concurrent checks of the exclusion constraint of the range storage can deadlock)
+                        .flatMapCompletable(i -> prime(opened.get(i), LocalDate.EPOCH.plusDays(i)))
+                        .doFinally(() -> opened.forEach(SqlConnection::close)));
+    }
+
+    private Completable prime(SqlConnection connection, LocalDate night) {
+        String bookingId = UUID.randomUUID().toString();
+        Booking booking = Booking.builder().id(bookingId).build();
+        String origin = eventPublisher.getOrigin();
+        String appendStatement = eventPublisher.appendStatement();
+        return bookingRepository.findBooking(connection, bookingId).ignoreElement()
+                .andThen(bookingRepository.updateBookingInfo(connection, booking, origin, appendStatement).ignoreElement())
+                .andThen(bookingRepository.rescheduleBooking(connection, bookingId, List.of(), origin, appendStatement).ignoreElement())
+                .andThen(bookingRepository.cancelBooking(connection, bookingId, origin, appendStatement).ignoreElement())
+                .andThen(idempotencyKeys.prime(connection))
+                .andThen(Completable.defer(() -> {
+                    io.vertx.reactivex.sqlclient.Transaction tx = connection.begin();
+                    return bookingRepository.createBooking(tx, booking, List.of(night)).ignoreElement()
+                            .andThen(idempotencyKeys.append(tx, bookingId, bookingId))
+                            .andThen(eventPublisher.append(tx, eventPublisher.event(bookingId, BookingAction.BOOK, List.of(night))))
+                            .andThen(tx.rxRollback());
+                }));
+    }
 
     /**
      * invalidate on update event
      */
     public void refreshCache() {
-        this.cacheBookedDates = bookedDates();
+        availabilityCache.requestRefresh();
     }
 
-    private Single<Set<LocalDate>> bookedDates() {
-        LocalDate minDate = LocalDate.now().plus(1, ChronoUnit.DAYS);
-        LocalDate maxDate = minDate.plus(1, ChronoUnit.MONTHS);
-        return bookingRepository.bookedDates(client, minDate, maxDate).toList()
-                .map(l -> (Set<LocalDate>)Sets.newTreeSet(l)).cache();
+    /**
+     * apply the dates of the events to the cache in one patch and drop the bookings of the events from the booking cache,
+     * a full reload is requested only when an event of an origin node is missing.
+     * the events without sequence come from a transport that does not lose events while connected, they are applied as is
+     */
+    public void onBookingEvents(List<BookingEvent> events) {
+        Set<LocalDate> booked = new HashSet<>();
+        Set<LocalDate> released = new HashSet<>();
+        boolean gap = false;
+        for (BookingEvent event : events) {
+            if (eventPublisher.getOrigin().equals(event.getOrigin())) {
+                // already applied on commit
+                continue;
+            }
+            if ((event.getSequence() == 0 || eventSequences.next(event.getOrigin(), event.getSequence()))
+                    && event.getDates() != null) {
+                bookingCache.invalidate(event.getBookingId());
+                // the events are merged in order, the last one wins for a given date
+                if (event.getAction() == BookingAction.BOOK) {
+                    released.removeAll(event.getDates());
+                    booked.addAll(event.getDates());
+                } else if (event.getAction() == BookingAction.CANCEL) {
+                    booked.removeAll(event.getDates());
+                    released.addAll(event.getDates());
+                }
+            } else {
+                log.info("gap in the events of {} before {}, reloading the cache", event.getOrigin(), event.getSequence());
+                gap = true;
+            }
+        }
+        if (!booked.isEmpty() || !released.isEmpty()) {
+            // the events of another node are not ordered with the events of the others, the nights stay unconfirmed
+            availabilityCache.patch(booked, released, false);
+        }
+        if (gap) {
+            // the missing events may have changed any booking
+            bookingCache.invalidateAll();
+            availabilityCache.requestRefresh();
+        }
     }
 
+    /**
+     * the booking, its nights and its event are deleted and written by one statement, without explicit transaction.
+     * the freed nights are patched in the local cache right away
+     */
     public Single<Boolean> cancelBooking(String bookingId) {
-        return client.rxBegin().flatMap(
-                tx -> bookingRepository.deleteBookingDates(tx, bookingId)
-                        .flatMap(u ->bookingRepository.deleteBooking(tx, bookingId))
-                .flatMap(u -> tx.rxCommit().doOnComplete(()-> triggerBookingEvent(bookingId, BookingAction.CANCEL)).toSingleDefault(u)
-                .onErrorResumeNext(e ->
-                        tx.rxRollback().andThen(Single.error(e))
-                ))
-        );
+        return bookingRepository.cancelBooking(client, bookingId, eventPublisher.getOrigin(), eventPublisher.appendStatement())
+                .map(dates -> {
+                    triggerBookingEvent(eventPublisher.event(bookingId, BookingAction.CANCEL, dates));
+                    return true;
+                })
+                .toSingle(false);
     }
 
+    /**
+     * the information and the event are written by one statement, the other nodes drop the booking from their booking cache
+     */
     public Maybe<Booking> updateBooking(Booking booking) {
-        return client.rxBegin().toMaybe()
-                .flatMap(tx ->
-                        this.bookingRepository.updateBookingInfo(tx, booking)
-                        .flatMap(b ->
-                                tx.rxCommit().toSingleDefault(b).toMaybe(),
-                                t ->  tx.rxRollback().onErrorComplete().andThen(Maybe.error(t)),
-                                () ->  tx.rxRollback().onErrorComplete().andThen(Maybe.empty()))
-                        );
+        return bookingRepository.updateBookingInfo(client, booking, eventPublisher.getOrigin(), eventPublisher.appendStatement())
+                .doOnSuccess(b -> triggerBookingEvent(eventPublisher.event(booking.getId(), BookingAction.UPDATE, List.of())));
     }
 
     /**
-     * we are using the db to manage concurrency on the booking entry
+     * move the booking to [startDate, endDate[ in one statement, only the changed nights are written.
+     * the conflicts are handled as for a booking: the new nights are claimed in process and a PK violation is a conflict
+     */
+    public Single<RescheduleResult> reschedule(String bookingId, LocalDate startDate, LocalDate endDate) {
+        Preconditions.checkArgument(endDate.isAfter(startDate));
+        final List<LocalDate> dates = startDate.datesUntil(endDate).collect(Collectors.toList());
+        final AtomicBoolean missing = new AtomicBoolean();
+        return bookingClaims.claim(dates, bookingRepository.rescheduleBooking(client, bookingId, dates,
+                eventPublisher.getOrigin(), eventPublisher.appendStatement())
+                .doOnComplete(() -> missing.set(true))
+                .onErrorResumeNext((Throwable t) -> {
+                    if (isConstraintError(t)) {
+                        dbConflicts.increment();
+                        return Maybe.empty();
+                    }
+                    return Maybe.error(t);
+                }))
+                .map(change -> {
+                    if (!change.getRemoved().isEmpty()) {
+                        triggerBookingEvent(eventPublisher.event(bookingId, BookingAction.CANCEL, change.getRemoved()));
+                    }
+                    if (!change.getAdded().isEmpty()) {
+                        triggerBookingEvent(eventPublisher.event(bookingId, BookingAction.BOOK, change.getAdded()));
+                    }
+                    return RescheduleResult.RESCHEDULED;
+                })
+                .switchIfEmpty(Single.fromCallable(() -> missing.get() ? RescheduleResult.NOT_FOUND : RescheduleResult.CONFLICT));
+    }
+
+    /**
+     * we are using the db to manage concurrency on the booking entry,
+     * the local cache only tells which dates must be checked on the db before trying to book them
      * @param booking
      * @param startDate
      * @param endDate
      * @return
      */
     public Maybe<Booking> tryToBook(Booking booking, LocalDate startDate, LocalDate endDate) {
+        return tryToBook(booking, startDate, endDate, null);
+    }
+
+    /**
+     * with an idempotency key, a retry gets the booking created by the first attempt instead of a new one or a conflict.
+     * the key is looked up in memory first and in the db only when the dates are conflicting:
+     * a retry of a committed booking always conflicts with it, a new booking does not pay for the lookup
+     */
+    public Maybe<Booking> tryToBook(Booking booking, LocalDate startDate, LocalDate endDate, @Nullable String idempotencyKey) {
         Preconditions.checkArgument(endDate.isAfter(startDate));
+        if (idempotencyKey == null) {
+            return book(booking, startDate, endDate, null);
+        }
+        return idempotencyKeys.peek(idempotencyKey)
+                .switchIfEmpty(Maybe.defer(() -> book(booking, startDate, endDate, idempotencyKey).map(Booking::getId)
+                        .switchIfEmpty(Maybe.defer(() -> idempotencyKeys.find(idempotencyKey)))))
+                .map(id -> booking.toBuilder().id(id).build());
+    }
+
+    private Maybe<Booking> book(Booking booking, LocalDate startDate, LocalDate endDate, @Nullable String idempotencyKey) {
+        long checkStart = System.nanoTime();
+        Optional<AvailabilityIndex> cached = availabilityCache.peek();
+        boolean known = cached
+                .map(index -> index.nextBooked(startDate.toEpochDay(), endDate.toEpochDay()) >= 0)
+                .orElse(false);
+        checkTimer.record(System.nanoTime() - checkStart, TimeUnit.NANOSECONDS);
+        if (known) {
+            AvailabilityIndex index = cached.get();
+            boolean confirmed = startDate.datesUntil(endDate)
+                    .mapToLong(LocalDate::toEpochDay)
+                    .anyMatch(day -> index.isBooked(day) && !index.isUnconfirmed(day));
+            if (confirmed) {
+                // booked by this node or read from the db, rejected without a connection
+                cacheConflicts.increment();
+                return Maybe.empty();
+            }
+            // only booked by the events of other nodes, a read on the primary confirms it instead of a transaction
+            return confirmBooked(index, startDate, endDate)
+                    .flatMapMaybe(conflict -> conflict ? Maybe.<Booking>empty() : insert(booking, startDate, endDate, idempotencyKey));
+        }
+        return insert(booking, startDate, endDate, idempotencyKey);
+    }
 
+    /**
+     * the nights booked by the events of other nodes are only a hint: the events of two nodes are not ordered between them,
+     * a CANCEL applied before the BOOK of the same nights leaves them booked in the cache. the nights are read on the primary,
+     * the cache is corrected when they are free and the booked ones are confirmed, their next conflicts skip the read
+     * @return true if one of the nights is booked in the db
+     */
+    private Single<Boolean> confirmBooked(AvailabilityIndex index, LocalDate startDate, LocalDate endDate) {
+        return bookingRepository.bookedDates(client, startDate, endDate.minusDays(1)).toList()
+                .map(booked -> {
+                    List<LocalDate> stale = startDate.datesUntil(endDate)
+                            .filter(date -> index.isBooked(date) && !booked.contains(date))
+                            .collect(Collectors.toList());
+                    if (!stale.isEmpty()) {
+                        log.debug("{} booked in the cache and free in the db", stale);
+                        staleNights.increment(stale.size());
+                        availabilityCache.patch(stale, false);
+                    }
+                    if (booked.isEmpty()) {
+                        return false;
+                    }
+                    availabilityCache.confirm(booked);
+                    cacheConflicts.increment();
+                    return true;
+                });
+    }
+
+    private Maybe<Booking> insert(Booking booking, LocalDate startDate, LocalDate endDate, @Nullable String idempotencyKey) {
         final String bookingId = UUID.randomUUID().toString();
-        return client.rxBegin()
-                .flatMapMaybe(tx -> {
-                    List<LocalDate> dates = startDate.datesUntil(endDate).collect(Collectors.toList());
-                    //if there is a concurrent transaction inserting at the same time it will faire with a  PK_VIOLATION violation error
-                    return this.bookingRepository.bookedDates(tx, startDate, endDate).toList()
-                            // if it's not empty it means there is conflict
-                            .filter(l -> l.isEmpty())
-                            .flatMap(l ->
-                                    Flowable.fromIterable(dates)
-                                            // date should always be book in order to avoid db deadlock
-                                            .flatMapSingle(d -> this.bookingRepository.bookDate(tx, d, bookingId).toSingle())
-                                            .lastOrError()
-                                            .flatMap(id -> bookingRepository.createBookingInfo(tx,
-                                                    booking.toBuilder().id(id).build()))
-                                            .toMaybe()
-                                            ).flatMap(
-                                            b -> tx.rxCommit().doOnComplete(()-> triggerBookingEvent(bookingId, BookingAction.BOOK))
-                                                    .toSingleDefault(b).toMaybe(),
+        final List<LocalDate> dates = startDate.datesUntil(endDate).collect(Collectors.toList());
+        final BookingEvent event = eventPublisher.event(bookingId, BookingAction.BOOK, dates);
+        // the concurrent attempts of this node on the same dates are done one at a time,
+        // once one is booked the others are rejected without a transaction
+        return bookingClaims.claim(dates, Timings.time(beginTimer, client.rxBegin())
+                .flatMapMaybe(tx ->
+                    //if one of the dates is already booked, or a concurrent transaction inserting at the same time,
+                    // the insert will fail with a PK_VIOLATION violation error (EXCLUSION_VIOLATION with the range storage)
+                    Timings.time(insertTimer, this.bookingRepository.createBooking(tx, booking.toBuilder().id(bookingId).build(), dates)
+                            // a concurrent attempt with the same key fails on the key, the caller then reads the booking of the key
+                            .flatMap(b -> idempotencyKey == null ? Single.just(b)
+                                    : idempotencyKeys.append(tx, idempotencyKey, bookingId).toSingleDefault(b)))
+                            // the event is written in the transaction of the booking
+                            .flatMap(b -> Timings.time(eventTimer, eventPublisher.append(tx, event)).toSingleDefault(b))
+                            .toMaybe()
+                            .flatMap(
+                                    b -> Timings.time(commitTimer, tx.rxCommit()).doOnComplete(()-> {
+                                                booked.increment();
+                                                if (idempotencyKey != null) {
+                                                    idempotencyKeys.committed(idempotencyKey, bookingId);
+                                                }
+                                                triggerBookingEvent(event);
+                                            })
+                                            .toSingleDefault(b).toMaybe(),
                                     (Throwable t) -> bookHandleError(tx, t),
-                                            () -> tx.rxRollback().onErrorComplete().andThen(Maybe.empty()))
-                    ;
-                });
+                                    () -> rollback(tx).andThen(Maybe.empty()))
+                ));
     }
 
     private Maybe<Booking> bookHandleError(io.vertx.reactivex.sqlclient.Transaction tx, Throwable t) {
@@ -120,16 +359,34 @@ public class BookingService {
             //depending on the postgres version/ config either the transaction will fail to commit
             // or there will be a constraint violation on insert
             // in case of rollback exception we must not rollback manually
+            rollbackExceptions.increment();
+            dbConflicts.increment();
             return Maybe.empty();
         }
-        return tx.rxRollback().onErrorComplete().andThen(isConstraintError(t) ? Maybe.empty() : Maybe.error(t));
+        if (isConstraintError(t)) {
+            dbConflicts.increment();
+        }
+        return rollback(tx).andThen(isConstraintError(t) ? Maybe.empty() : Maybe.error(t));
+    }
+
+    private Completable rollback(io.vertx.reactivex.sqlclient.Transaction tx) {
+        rollbacks.increment();
+        return tx.rxRollback().onErrorComplete();
     }
 
-    private void triggerBookingEvent(String bookingId, BookingAction action) {
-        bookingClient.sendEvent(bookingId, action);
+    /**
+     * the local caches are updated right away, the other nodes get the event once it is sent
+     */
+    private void triggerBookingEvent(BookingEvent event) {
+        bookingCache.invalidate(event.getBookingId());
+        if (!event.getDates().isEmpty()) {
+            availabilityCache.patch(event.getDates(), event.getAction() == BookingAction.BOOK);
+        }
+        eventPublisher.committed(event);
     }
 
     private boolean isConstraintError(Throwable t) {
-        return t instanceof PgException && PK_VIOLATION.equals(((PgException)t).getCode());
+        return t instanceof PgException && (PK_VIOLATION.equals(((PgException)t).getCode())
+                || EXCLUSION_VIOLATION.equals(((PgException)t).getCode()));
     }
 }
@@ -0,0 +1,32 @@
+package org.bin2.island.booking.service;
+
+import io.micronaut.context.annotation.Value;
+
+import javax.inject.Singleton;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * dates that can be booked: from tomorrow to tomorrow + booking.window.length (1 month by default)
+ */
+@Singleton
+public class BookingWindow {
+    private final Period length;
+
+    public BookingWindow(@Value("${booking.window.length:P1M}") String length) {
+        this.length = Period.parse(length);
+    }
+
+    public Period getLength() {
+        return length;
+    }
+
+    public LocalDate minDate() {
+        return LocalDate.now().plus(1, ChronoUnit.DAYS);
+    }
+
+    public LocalDate maxDate() {
+        return minDate().plus(length);
+    }
+}
@@ -0,0 +1,64 @@
+package org.bin2.island.booking.service;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.scheduling.annotation.Scheduled;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * last sequence received from each origin node.
+ * the origin is random per process: the sequence of an origin starts with the first event received from it,
+ * and an origin without event for more than orphan-delay is forgotten, a node restarted or gone does not stay in memory
+ */
+@Singleton
+@Slf4j
+public class EventSequences {
+    private final ConcurrentMap<String, Received> origins = new ConcurrentHashMap<>();
+    private final long idleNanos;
+
+    public EventSequences(@Value("${booking.events.orphan-delay:30s}") Duration orphanDelay) {
+        this.idleNanos = orphanDelay.toNanos();
+    }
+
+    /**
+     * @return false if an event of the origin is missing before this one
+     */
+    public boolean next(String origin, long sequence) {
+        long now = System.nanoTime();
+        Received previous = origins.put(origin, new Received(sequence, now));
+        return previous == null || sequence == previous.sequence + 1;
+    }
+
+    /**
+     * @return the number of origins followed
+     */
+    public int size() {
+        return origins.size();
+    }
+
+    @Scheduled(fixedDelay = "${booking.events.orphan-delay:30s}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        origins.entrySet().removeIf(e -> {
+            boolean idle = now - e.getValue().received > idleNanos;
+            if (idle) {
+                log.debug("no event from {} since {}, forgotten", e.getKey(), e.getValue().sequence);
+            }
+            return idle;
+        });
+    }
+
+    private static final class Received {
+        private final long sequence;
+        private final long received;
+
+        private Received(long sequence, long received) {
+            this.sequence = sequence;
+            this.received = received;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.bin2.island.booking.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.scheduling.annotation.Scheduled;
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
+import io.vertx.reactivex.pgclient.PgPool;
+import io.vertx.reactivex.sqlclient.SqlClient;
+import lombok.extern.slf4j.Slf4j;
+import org.bin2.island.booking.repository.BookingIdempotencyRepository;
+
+import javax.inject.Singleton;
+import java.time.Duration;
+
+/**
+ * bookings already created for an idempotency key.
+ * the key is written in the transaction of the booking, the recent keys are kept in memory
+ * (bounded by booking.idempotency.size, for booking.idempotency.ttl) and the db is the fallback.
+ * the keys are removed from the db after booking.idempotency.retention
+ */
+@Singleton
+@Slf4j
+public class IdempotencyKeys {
+    private final PgPool client;
+    private final BookingIdempotencyRepository idempotencyRepository;
+    private final Cache<String, String> bookingIds;
+    private final Duration retention;
+    private final Counter cacheReplays;
+    private final Counter dbReplays;
+
+    public IdempotencyKeys(PgPool client, BookingIdempotencyRepository idempotencyRepository,
+                           @Value("${booking.idempotency.size:100000}") long size,
+                           @Value("${booking.idempotency.ttl:1h}") Duration ttl,
+                           @Value("${booking.idempotency.retention:24h}") Duration retention,
+                           MeterRegistry registry) {
+        this.client = client;
+        this.idempotencyRepository = idempotencyRepository;
+        this.bookingIds = CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(ttl)
+                .build();
+        this.retention = retention;
+        this.cacheReplays = registry.counter("booking.book.replays", "source", "cache");
+        this.dbReplays = registry.counter("booking.book.replays", "source", "db");
+    }
+
+    /**
+     * @return the booking id of the key if it is in memory, never waits on the db
+     */
+    public Maybe<String> peek(String key) {
+        return Maybe.fromCallable(() -> bookingIds.getIfPresent(key))
+                .doOnSuccess(id -> cacheReplays.increment());
+    }
+
+    /**
+     * @return the booking id of the key, read from the db if it is not in memory
+     */
+    public Maybe<String> find(String key) {
+        return peek(key).switchIfEmpty(Maybe.defer(() -> idempotencyRepository.findBookingId(client, key)
+                .doOnSuccess(id -> {
+                    dbReplays.increment();
+                    bookingIds.put(key, id);
+                })));
+    }
+
+    /**
+     * prepare the lookup of the keys on the connection
+     */
+    public Completable prime(SqlClient connection) {
+        return idempotencyRepository.findBookingId(connection, "").ignoreElement();
+    }
+
+    /**
+     * write the key in the transaction of the booking
+     */
+    public Completable append(SqlClient tx, String key, String bookingId) {
+        return idempotencyRepository.append(tx, key, bookingId);
+    }
+
+    /**
+     * the booking of the key is committed
+     */
+    public void committed(String key, String bookingId) {
+        bookingIds.put(key, bookingId);
+    }
+
+    @Scheduled(fixedDelay = "${booking.idempotency.purge-interval:1h}")
+    public void purge() {
+        idempotencyRepository.purge(client, retention)
+                .subscribe(count -> log.debug("{} idempotency keys purged", count),
+                        e -> log.error("unable to purge the idempotency keys", e));
+    }
+}
@@ -0,0 +1,138 @@
+package org.bin2.island.booking.service;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PreparedQuery;
+import io.vertx.sqlclient.Query;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.SqlResult;
+import io.vertx.sqlclient.Transaction;
+import io.vertx.sqlclient.Tuple;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * pool reporting each connection it gives to its {@link PoolMetrics}: the transactions, the connections, and the
+ * queries run outside of a transaction, which take a connection of the pool for the time of the query
+ */
+class MeteredPgPool implements PgPool {
+    private final PgPool pool;
+    private final PoolMetrics metrics;
+
+    MeteredPgPool(PgPool pool, PoolMetrics metrics) {
+        this.pool = pool;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void getConnection(Handler<AsyncResult<SqlConnection>> handler) {
+        long start = metrics.waiting();
+        pool.getConnection(connection -> {
+            metrics.acquired(start);
+            handler.handle(connection);
+        });
+    }
+
+    @Override
+    public void begin(Handler<AsyncResult<Transaction>> handler) {
+        long start = metrics.waiting();
+        pool.begin(tx -> {
+            metrics.acquired(start);
+            handler.handle(tx);
+        });
+    }
+
+    @Override
+    public Query<RowSet<Row>> query(String sql) {
+        return new MeteredQuery<>(connection -> connection.query(sql));
+    }
+
+    @Override
+    public PreparedQuery<RowSet<Row>> preparedQuery(String sql) {
+        return new MeteredPreparedQuery<>(connection -> connection.preparedQuery(sql));
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    /**
+     * run the query on a connection of the pool, the connection is given back once the query terminates
+     */
+    private <T> void withConnection(Handler<AsyncResult<T>> handler, BiConsumer<SqlConnection, Handler<AsyncResult<T>>> execute) {
+        getConnection(connection -> {
+            if (connection.failed()) {
+                handler.handle(Future.failedFuture(connection.cause()));
+                return;
+            }
+            execute.accept(connection.result(), result -> {
+                connection.result().close();
+                handler.handle(result);
+            });
+        });
+    }
+
+    private class MeteredQuery<T> implements Query<T> {
+        private final Function<SqlConnection, Query<T>> query;
+
+        private MeteredQuery(Function<SqlConnection, Query<T>> query) {
+            this.query = query;
+        }
+
+        @Override
+        public void execute(Handler<AsyncResult<T>> handler) {
+            withConnection(handler, (connection, result) -> query.apply(connection).execute(result));
+        }
+
+        @Override
+        public <R> Query<SqlResult<R>> collecting(Collector<Row, ?, R> collector) {
+            return new MeteredQuery<>(connection -> query.apply(connection).collecting(collector));
+        }
+
+        @Override
+        public <U> Query<RowSet<U>> mapping(Function<Row, U> mapper) {
+            return new MeteredQuery<>(connection -> query.apply(connection).mapping(mapper));
+        }
+    }
+
+    private class MeteredPreparedQuery<T> implements PreparedQuery<T> {
+        private final Function<SqlConnection, PreparedQuery<T>> query;
+
+        private MeteredPreparedQuery(Function<SqlConnection, PreparedQuery<T>> query) {
+            this.query = query;
+        }
+
+        @Override
+        public void execute(Handler<AsyncResult<T>> handler) {
+            withConnection(handler, (connection, result) -> query.apply(connection).execute(result));
+        }
+
+        @Override
+        public void execute(Tuple tuple, Handler<AsyncResult<T>> handler) {
+            withConnection(handler, (connection, result) -> query.apply(connection).execute(tuple, result));
+        }
+
+        @Override
+        public void executeBatch(List<Tuple> batch, Handler<AsyncResult<T>> handler) {
+            withConnection(handler, (connection, result) -> query.apply(connection).executeBatch(batch, result));
+        }
+
+        @Override
+        public <R> PreparedQuery<SqlResult<R>> collecting(Collector<Row, ?, R> collector) {
+            return new MeteredPreparedQuery<>(connection -> query.apply(connection).collecting(collector));
+        }
+
+        @Override
+        public <U> PreparedQuery<RowSet<U>> mapping(Function<Row, U> mapper) {
+            return new MeteredPreparedQuery<>(connection -> query.apply(connection).mapping(mapper));
+        }
+    }
+}
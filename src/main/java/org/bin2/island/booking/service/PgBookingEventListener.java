@@ -0,0 +1,85 @@
+package org.bin2.island.booking.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.pgclient.pubsub.PgSubscriber;
+import lombok.extern.slf4j.Slf4j;
+import org.bin2.island.booking.model.BookingEvent;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * booking.events.transport=pg: LISTEN on the booking_update channel with a dedicated connection.
+ * the connection is reopened after a drop, the notifications sent in the meantime are lost
+ * so the cache is reloaded once listening again
+ */
+@Singleton
+@Slf4j
+@Requires(property = "booking.events.transport", value = "pg")
+public class PgBookingEventListener {
+    private final BookingService bookingService;
+    private final AvailabilityCache availabilityCache;
+    private final ObjectMapper objectMapper;
+    private final Vertx vertx;
+    private final PgSubscriber subscriber;
+    private final Duration reconnectDelay;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    public PgBookingEventListener(BookingService bookingService, AvailabilityCache availabilityCache,
+                                  ObjectMapper objectMapper, Vertx vertx,
+                                  @Value("${vertx.pg.client.uri}") String uri,
+                                  @Value("${booking.events.pg.reconnect-delay:1s}") Duration reconnectDelay) {
+        this.bookingService = bookingService;
+        this.availabilityCache = availabilityCache;
+        this.objectMapper = objectMapper;
+        this.vertx = vertx;
+        this.reconnectDelay = reconnectDelay;
+        this.subscriber = PgSubscriber.subscriber(vertx, PgConnectOptions.fromUri(uri))
+                // retried for ever, the node can not be kept up to date without it
+                .reconnectPolicy(retries -> reconnectDelay.toMillis());
+        subscriber.channel(PgNotifyEventPublisher.CHANNEL)
+                .subscribeHandler(v -> {
+                    if (!subscribed.compareAndSet(false, true)) {
+                        log.info("listening again on {}, reloading the cache", PgNotifyEventPublisher.CHANNEL);
+                        availabilityCache.requestRefresh();
+                    }
+                })
+                .handler(this::receive);
+    }
+
+    @EventListener
+    public void onStartup(StartupEvent event) {
+        connect();
+    }
+
+    @PreDestroy
+    public void close() {
+        subscriber.close();
+    }
+
+    private void connect() {
+        subscriber.rxConnect().subscribe(() -> log.info("listening on {}", PgNotifyEventPublisher.CHANNEL), e -> {
+            // the reconnect policy only applies once connected
+            log.error("unable to listen on {}", PgNotifyEventPublisher.CHANNEL, e);
+            vertx.setTimer(reconnectDelay.toMillis(), id -> connect());
+        });
+    }
+
+    private void receive(String payload) {
+        try {
+            bookingService.onBookingEvents(List.of(objectMapper.readValue(payload, BookingEvent.class)));
+        } catch (Exception e) {
+            log.error("invalid booking event {}, reloading the cache", payload, e);
+            availabilityCache.requestRefresh();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.bin2.island.booking.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.context.annotation.Requires;
+import io.reactivex.Completable;
+import io.vertx.reactivex.sqlclient.SqlClient;
+import io.vertx.reactivex.sqlclient.Tuple;
+import org.bin2.island.booking.model.BookingEvent;
+
+import javax.inject.Singleton;
+import java.util.UUID;
+
+/**
+ * booking.events.transport=pg: the event is sent with NOTIFY in the transaction of the booking,
+ * postgres delivers it to the listening nodes on commit and drops it on rollback, there is no outbox to relay
+ */
+@Singleton
+@Requires(property = "booking.events.transport", value = "pg")
+public class PgNotifyEventPublisher implements BookingEventPublisher {
+    static final String CHANNEL = "booking_update";
+
+    private final String origin = UUID.randomUUID().toString();
+    private final ObjectMapper objectMapper;
+
+    public PgNotifyEventPublisher(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String getOrigin() {
+        return origin;
+    }
+
+    @Override
+    public Completable append(SqlClient tx, BookingEvent event) {
+        // the payload is limited to 8000 bytes, far more than the dates of a booking window
+        return Completable.defer(() -> tx.preparedQuery("SELECT pg_notify($1, $2)")
+                .rxExecute(Tuple.of(CHANNEL, objectMapper.writeValueAsString(event)))
+                .ignoreElement());
+    }
+
+    @Override
+    public String appendStatement() {
+        // same payload as the json of BookingEvent, the cte is not inlined as pg_notify is volatile
+        return "SELECT pg_notify('" + CHANNEL + "', json_build_object('bookingId', \"bookingId\", 'action', action, " +
+                "'dates', dates, 'origin', $2::text, 'sequence', 0)::text) FROM event";
+    }
+
+    @Override
+    public void committed(BookingEvent event) {
+        // delivered by postgres on commit
+    }
+}
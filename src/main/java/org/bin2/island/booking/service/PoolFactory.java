@@ -0,0 +1,54 @@
+package org.bin2.island.booking.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Bean;
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Replaces;
+import io.micronaut.context.annotation.Value;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+
+import javax.inject.Singleton;
+
+/**
+ * the primary pool is the vertx.pg.client one, the read pool is configured with booking.read-pool
+ */
+@Factory
+public class PoolFactory {
+
+    /**
+     * the primary pool, with the prepared statements kept on each connection (the vertx.pg.client options are
+     * not applied when the uri is set, only the uri and maxSize are read here).
+     * every connection taken from it is reported to the write pool metrics
+     */
+    @Singleton
+    @Bean(preDestroy = "close")
+    @Replaces(PgPool.class)
+    public PgPool writePool(Vertx vertx, @Value("${vertx.pg.client.uri}") String uri,
+                            @Value("${vertx.pg.client.maxSize:4}") int maxSize,
+                            @Value("${vertx.pg.client.cachePreparedStatements:true}") boolean cachePreparedStatements,
+                            PoolMetrics writePoolMetrics) {
+        PgConnectOptions options = PgConnectOptions.fromUri(uri).setCachePreparedStatements(cachePreparedStatements);
+        io.vertx.pgclient.PgPool pool = io.vertx.pgclient.PgPool.pool(vertx.getDelegate(), options, new PoolOptions().setMaxSize(maxSize));
+        return PgPool.newInstance(new MeteredPgPool(pool, writePoolMetrics));
+    }
+
+    @Singleton
+    public PoolMetrics writePoolMetrics(MeterRegistry registry, @Value("${vertx.pg.client.maxSize:4}") int maxSize) {
+        return new PoolMetrics(registry, "write", maxSize);
+    }
+
+    @Singleton
+    @Bean(preDestroy = "close")
+    public ReadPool readPool(Vertx vertx, MeterRegistry registry,
+                             @Value("${vertx.pg.client.uri}") String primaryUri,
+                             @Value("${booking.read-pool.uri:}") String uri,
+                             @Value("${booking.read-pool.max-size:2}") int maxSize) {
+        // same db as the primary pool unless a replica is configured
+        PgConnectOptions options = PgConnectOptions.fromUri(uri.isEmpty() ? primaryUri : uri);
+        PgPool client = PgPool.pool(vertx, options, new PoolOptions().setMaxSize(maxSize));
+        return new ReadPool(client, new PoolMetrics(registry, "read", maxSize));
+    }
+}
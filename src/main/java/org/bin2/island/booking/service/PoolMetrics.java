@@ -0,0 +1,76 @@
+package org.bin2.island.booking.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.reactivex.Single;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the vertx pool has no metrics of its own: the acquisitions going through {@link #acquire(Single)}
+ * or a {@link MeteredPgPool} report how long they waited for a connection and how many are waiting, tagged with the pool name
+ */
+public class PoolMetrics {
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Timer wait;
+    /**
+     * moving average of the last waits, in nanoseconds
+     */
+    private double recentWait;
+
+    public PoolMetrics(MeterRegistry registry, String pool, int maxSize) {
+        Gauge.builder("booking.pool.pending", pending, AtomicInteger::get)
+                .description("connection acquisitions waiting on the pool")
+                .tag("pool", pool)
+                .register(registry);
+        Gauge.builder("booking.pool.max", () -> maxSize)
+                .description("maximum size of the pool")
+                .tag("pool", pool)
+                .register(registry);
+        wait = Timer.builder("booking.pool.wait")
+                .description("time to get a connection from the pool, including the BEGIN of a transaction")
+                .tag("pool", pool)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * @param acquisition rxBegin or rxGetConnection of the pool
+     */
+    public <T> Single<T> acquire(Single<T> acquisition) {
+        return Single.defer(() -> {
+            long start = waiting();
+            return acquisition.doFinally(() -> acquired(start));
+        });
+    }
+
+    /**
+     * a connection is asked to the pool
+     *
+     * @return start of the wait, given to {@link #acquired(long)} once the pool answers
+     */
+    long waiting() {
+        pending.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    void acquired(long start) {
+        pending.decrementAndGet();
+        long waited = System.nanoTime() - start;
+        wait.record(waited, TimeUnit.NANOSECONDS);
+        recordWait(waited);
+    }
+
+    /**
+     * @return moving average of the recent waits for a connection, in nanoseconds
+     */
+    public synchronized long getRecentWait() {
+        return (long) recentWait;
+    }
+
+    private synchronized void recordWait(long waited) {
+        recentWait += (waited - recentWait) * 0.2;
+    }
+}
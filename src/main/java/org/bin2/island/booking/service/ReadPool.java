@@ -0,0 +1,33 @@
+package org.bin2.island.booking.service;
+
+import io.reactivex.Flowable;
+import io.vertx.reactivex.pgclient.PgPool;
+import io.vertx.reactivex.sqlclient.SqlClient;
+
+import java.util.function.Function;
+
+/**
+ * pool of the reads done outside of a transaction (availability cache loads), it can point at a replica.
+ * the bookings and the conflict checks stay on the primary pool, a burst of reloads never holds their connections
+ */
+public class ReadPool {
+    private final PgPool client;
+    private final PoolMetrics metrics;
+
+    public ReadPool(PgPool client, PoolMetrics metrics) {
+        this.client = client;
+        this.metrics = metrics;
+    }
+
+    /**
+     * run the query on a connection of the pool, the connection is given back once the query terminates
+     */
+    public <T> Flowable<T> withConnection(Function<SqlClient, Flowable<T>> query) {
+        return metrics.acquire(client.rxGetConnection())
+                .flatMapPublisher(connection -> query.apply(connection).doFinally(connection::close));
+    }
+
+    public void close() {
+        client.close();
+    }
+}
@@ -0,0 +1,10 @@
+package org.bin2.island.booking.service;
+
+public enum RescheduleResult {
+    RESCHEDULED,
+    NOT_FOUND,
+    /**
+     * one of the new nights is booked by another booking, nothing is changed
+     */
+    CONFLICT
+}
@@ -0,0 +1,38 @@
+package org.bin2.island.booking.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * record the time between the subscription of a reactive call and its termination
+ */
+public final class Timings {
+
+    private Timings() {
+    }
+
+    public static <T> Single<T> time(Timer timer, Single<T> source) {
+        return Single.defer(() -> {
+            long start = System.nanoTime();
+            return source.doFinally(() -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    public static <T> Maybe<T> time(Timer timer, Maybe<T> source) {
+        return Maybe.defer(() -> {
+            long start = System.nanoTime();
+            return source.doFinally(() -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    public static Completable time(Timer timer, Completable source) {
+        return Completable.defer(() -> {
+            long start = System.nanoTime();
+            return source.doFinally(() -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+}
@@ -0,0 +1,22 @@
+package org.bin2.island.booking.service;
+
+import io.micronaut.context.annotation.Bean;
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Requires;
+import io.vertx.reactivex.core.Vertx;
+
+import javax.inject.Singleton;
+
+/**
+ * one vertx instance for the pg pool and the pg listener so they share the same event loops
+ */
+@Factory
+public class VertxFactory {
+
+    @Singleton
+    @Bean(preDestroy = "close")
+    @Requires(missingBeans = Vertx.class)
+    public Vertx vertx() {
+        return Vertx.vertx();
+    }
+}
@@ -0,0 +1,7 @@
+CREATE TABLE public."BOOKING_RANGE"
+(
+    "bookingId" character(36) NOT NULL,
+    stay daterange NOT NULL,
+    PRIMARY KEY ("bookingId"),
+    EXCLUDE USING gist (stay WITH &&)
+);
@@ -0,0 +1,10 @@
+CREATE TABLE public."BOOKING_OUTBOX"
+(
+    id bigserial NOT NULL,
+    origin character(36) NOT NULL,
+    "bookingId" character(36) NOT NULL,
+    action character varying(16) NOT NULL,
+    dates date[] NOT NULL,
+    created timestamp with time zone NOT NULL DEFAULT now(),
+    PRIMARY KEY (id)
+);
@@ -0,0 +1,9 @@
+CREATE TABLE public."BOOKING_IDEMPOTENCY"
+(
+    key character varying(255) NOT NULL,
+    "bookingId" character(36) NOT NULL,
+    created timestamp with time zone NOT NULL DEFAULT now(),
+    PRIMARY KEY (key)
+);
+
+CREATE INDEX "BOOKING_IDEMPOTENCY_created" ON public."BOOKING_IDEMPOTENCY" (created);
@@ -0,0 +1,40 @@
+-- BOOKING_DATE is partitioned by month so that the past months can be archived, requires postgres 11 or later.
+-- the monthly partitions are named BOOKING_DATE_yyyy_MM, the next ones are created by BookingPartitions
+ALTER TABLE public."BOOKING_DATE" RENAME TO "BOOKING_DATE_UNPARTITIONED";
+ALTER TABLE public."BOOKING_DATE_UNPARTITIONED" RENAME CONSTRAINT "BOOKING_DATE_pkey" TO "BOOKING_DATE_UNPARTITIONED_pkey";
+
+CREATE TABLE public."BOOKING_DATE"
+(
+    date date NOT NULL,
+    "bookingId" character(36),
+    PRIMARY KEY (date)
+) PARTITION BY RANGE (date);
+
+-- cancel looks up the nights of a booking
+CREATE INDEX "BOOKING_DATE_bookingId" ON public."BOOKING_DATE" ("bookingId");
+
+-- dates without a monthly partition. the booking window is configured on the service, BookingPartitions creates
+-- the partitions up to it on startup and moves there the nights inserted here in the meantime
+CREATE TABLE public."BOOKING_DATE_DEFAULT" PARTITION OF public."BOOKING_DATE" DEFAULT;
+
+DO $$
+DECLARE
+    month date;
+BEGIN
+    FOR month IN SELECT generate_series(
+            date_trunc('month', least(coalesce((SELECT min(date) FROM public."BOOKING_DATE_UNPARTITIONED"), current_date), current_date)),
+            -- every night already booked gets its partition, whatever the length of the window it was booked with
+            date_trunc('month', greatest(coalesce((SELECT max(date) FROM public."BOOKING_DATE_UNPARTITIONED"), current_date), current_date)) + interval '2 months',
+            interval '1 month')::date
+    LOOP
+        EXECUTE format('CREATE TABLE public.%I PARTITION OF public."BOOKING_DATE" FOR VALUES FROM (%L) TO (%L)',
+                'BOOKING_DATE_' || to_char(month, 'YYYY_MM'), month, (month + interval '1 month')::date);
+    END LOOP;
+END
+$$;
+
+INSERT INTO public."BOOKING_DATE" (date, "bookingId") SELECT date, "bookingId" FROM public."BOOKING_DATE_UNPARTITIONED";
+DROP TABLE public."BOOKING_DATE_UNPARTITIONED";
+
+-- the partitions past the retention are detached and moved here
+CREATE SCHEMA IF NOT EXISTS booking_archive;
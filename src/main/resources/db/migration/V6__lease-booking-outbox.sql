@@ -0,0 +1,2 @@
+-- the rows stay in the outbox while they are sent, leased by the relay sending them
+ALTER TABLE public."BOOKING_OUTBOX" ADD COLUMN leased timestamp with time zone;
@@ -0,0 +1,80 @@
+package org.bin2.island.booking.api;
+
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+
+/**
+ * token bucket of the clients behind a proxy appending to X-Forwarded-For
+ */
+public class AdmissionApiTest extends BaseContainerTest {
+    private static final int BURST = 3;
+
+    @Inject
+    @Client("/")
+    HttpClient client;
+
+    @Nonnull
+    @Override
+    public Map<String, String> getProperties() {
+        var properties = super.getProperties();
+        properties.put("booking.admission.client.header", "X-Forwarded-For");
+        properties.put("booking.admission.client.burst", String.valueOf(BURST));
+        properties.put("booking.admission.client.rate", "0.01");
+        return properties;
+    }
+
+    @Test
+    public void testForwardedClient() {
+        Assertions.assertEquals("198.51.100.7", AdmissionFilter.client("198.51.100.7", 1));
+        Assertions.assertEquals("198.51.100.7", AdmissionFilter.client("203.0.113.1, 198.51.100.7", 1));
+        Assertions.assertEquals("198.51.100.7", AdmissionFilter.client("203.0.113.1, 198.51.100.7, 10.0.0.1", 2));
+        Assertions.assertEquals("198.51.100.7", AdmissionFilter.client("198.51.100.7, 10.0.0.1", 3));
+    }
+
+    @Test
+    public void testBurstOverTheLimitIsRejected() {
+        for (int i = 0; i < BURST; i++) {
+            Assertions.assertNotEquals(HttpStatus.TOO_MANY_REQUESTS, post("203.0.113." + i + ", 198.51.100.7").getStatus());
+        }
+        // the entry the client sets itself does not give it a new bucket
+        HttpResponse<?> rejected = post("203.0.113.99, 198.51.100.7");
+        Assertions.assertEquals(HttpStatus.TOO_MANY_REQUESTS, rejected.getStatus());
+        Assertions.assertTrue(Long.parseLong(rejected.getHeaders().get(HttpHeaders.RETRY_AFTER)) >= 1);
+
+        Assertions.assertNotEquals(HttpStatus.TOO_MANY_REQUESTS, post("198.51.100.8").getStatus());
+    }
+
+    @Test
+    public void testGetIsNotLimited() {
+        for (int i = 0; i < 2 * BURST; i++) {
+            HttpResponse<?> response = client.toBlocking().exchange(HttpRequest.GET("/api/v1/booking/available")
+                    .header("X-Forwarded-For", "198.51.100.9"));
+            Assertions.assertEquals(HttpStatus.OK, response.getStatus());
+        }
+    }
+
+    /**
+     * an empty booking request, rejected by the validation once admitted
+     */
+    private HttpResponse<?> post(String forwarded) {
+        try {
+            return client.toBlocking().exchange(HttpRequest.POST("/api/v1/booking/", BookingRequest.builder().build())
+                    .header("X-Forwarded-For", forwarded));
+        } catch (HttpClientResponseException e) {
+            return e.getResponse();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.bin2.island.booking.api;
+
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import org.bin2.island.booking.service.AvailabilityIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AvailabilityFormatTest {
+
+    private static final LocalDate FROM = LocalDate.of(2021, 1, 1);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AvailabilityResponseCache responseCache = new AvailabilityResponseCache(null, objectMapper, 1);
+    private final AvailabilityIndex index = AvailabilityIndex.builder(FROM, FROM.plusDays(99))
+            .book(FROM.plusDays(2))
+            .book(FROM.plusDays(3))
+            .book(FROM.plusDays(9))
+            .build(1);
+
+    @Test
+    public void testNegotiate() {
+        Assertions.assertEquals(AvailabilityFormat.DATES, AvailabilityFormat.negotiate(null));
+        Assertions.assertEquals(AvailabilityFormat.DATES, AvailabilityFormat.negotiate("*/*"));
+        Assertions.assertEquals(AvailabilityFormat.DATES, AvailabilityFormat.negotiate("text/html"));
+        Assertions.assertEquals(AvailabilityFormat.BITMAP, AvailabilityFormat.negotiate(AvailabilityFormat.BITMAP_JSON));
+        // an exact media type wins over a wildcard of the same quality
+        Assertions.assertEquals(AvailabilityFormat.INTERVALS, AvailabilityFormat.negotiate("*/*, " + AvailabilityFormat.INTERVALS_JSON));
+        Assertions.assertEquals(AvailabilityFormat.INTERVALS, AvailabilityFormat.negotiate(
+                "application/json;q=0.5, " + AvailabilityFormat.INTERVALS_JSON + ", " + AvailabilityFormat.BITMAP_JSON + ";q=0.9"));
+        Assertions.assertEquals(AvailabilityFormat.DATES, AvailabilityFormat.negotiate(AvailabilityFormat.BITMAP_JSON + ";q=0"));
+    }
+
+    @Test
+    public void testIntervals() throws Exception {
+        byte[] json = responseCache.encode(index, FROM, FROM.plusDays(12), AvailabilityFormat.INTERVALS).getJson();
+        Assertions.assertEquals(List.of(
+                Map.of("from", "2021-01-01", "to", "2021-01-03"),
+                Map.of("from", "2021-01-05", "to", "2021-01-10"),
+                Map.of("from", "2021-01-11", "to", "2021-01-13")),
+                objectMapper.readValue(json, List.class));
+        // the days after the indexed window are available
+        json = responseCache.encode(index, FROM.plusDays(95), FROM.plusDays(105), AvailabilityFormat.INTERVALS).getJson();
+        Assertions.assertEquals(List.of(Map.of("from", "2021-04-06", "to", "2021-04-16")), objectMapper.readValue(json, List.class));
+        json = responseCache.encode(index, FROM.plusDays(2), FROM.plusDays(4), AvailabilityFormat.INTERVALS).getJson();
+        Assertions.assertEquals(List.of(), objectMapper.readValue(json, List.class));
+    }
+
+    @Test
+    public void testBitmap() throws Exception {
+        byte[] json = responseCache.encode(index, FROM, FROM.plusDays(12), AvailabilityFormat.BITMAP).getJson();
+        Map<?, ?> bitmap = objectMapper.readValue(json, Map.class);
+        Assertions.assertEquals("2021-01-01", bitmap.get("start"));
+        Assertions.assertEquals(12, bitmap.get("days"));
+        Assertions.assertArrayEquals(index.availableBitmap(FROM, FROM.plusDays(12)),
+                Base64.getDecoder().decode((String) bitmap.get("bitmap")));
+    }
+
+    @Test
+    public void testFormatsHaveTheirOwnEtag() {
+        var dates = responseCache.encode(index, FROM, FROM.plusDays(12), AvailabilityFormat.DATES);
+        var intervals = responseCache.encode(index, FROM, FROM.plusDays(12), AvailabilityFormat.INTERVALS);
+        Assertions.assertNotEquals(dates.getEtag(), intervals.getEtag());
+    }
+}
@@ -0,0 +1,120 @@
+package org.bin2.island.booking.api;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+
+import org.bin2.island.booking.model.BookingAction;
+import org.bin2.island.booking.model.BookingEvent;
+import org.bin2.island.booking.service.BookingService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.http.client.sse.RxSseClient;
+import io.micronaut.http.sse.Event;
+import io.reactivex.exceptions.MissingBackpressureException;
+import io.reactivex.flowables.ConnectableFlowable;
+import io.reactivex.subscribers.TestSubscriber;
+
+/**
+ * GET /available/stream: the snapshot, the deltas that follow it and the disconnection of a slow subscriber
+ */
+public class AvailabilityStreamApiTest extends BaseContainerTest {
+    private static final int BUFFER_SIZE = 8;
+
+    @Inject
+    @Client("/")
+    HttpClient client;
+
+    @Inject
+    @Client("/")
+    RxSseClient sseClient;
+
+    @Inject
+    AvailabilityStreamController streamController;
+
+    @Inject
+    BookingService bookingService;
+
+    @Nonnull
+    @Override
+    public Map<String, String> getProperties() {
+        var properties = super.getProperties();
+        properties.put("booking.available.stream-buffer-size", String.valueOf(BUFFER_SIZE));
+        return properties;
+    }
+
+    @Test
+    public void testSnapshotThenBookedDelta() throws Exception {
+        LocalDate from = LocalDate.now().plus(26, ChronoUnit.DAYS);
+        ConnectableFlowable<Event<String>> events = sseClient
+                .eventStream(HttpRequest.GET("/api/v1/booking/available/stream"))
+                // the client gets nothing when the whole stream is requested at once
+                .rebatchRequests(16)
+                .map(e -> Event.of(e.getData().toString(StandardCharsets.UTF_8)).name(e.getName()).id(e.getId()))
+                .replay();
+        var connection = events.connect();
+        try {
+            Event<String> snapshot = events.firstOrError().timeout(10, TimeUnit.SECONDS).blockingGet();
+            Assertions.assertEquals("snapshot", snapshot.getName());
+            Assertions.assertTrue(new ObjectMapper().readValue(snapshot.getData(), List.class).contains(from.toString()));
+
+            String bookingId = client.toBlocking().retrieve(HttpRequest.POST("/api/v1/booking/", BookingRequest.builder()
+                    .startDate(from)
+                    .endDate(from.plus(1, ChronoUnit.DAYS))
+                    .bookingInfo(BookingInfo.builder().email("testemail@.com").firstname("firstname").lastname("lastname").build())
+                    .build()));
+            try {
+                // the changes older than the snapshot are not sent, the first delta booking the night follows it
+                Event<String> delta = events.skip(1)
+                        .filter(e -> booked(e).contains(from.toString()))
+                        .firstOrError().timeout(10, TimeUnit.SECONDS).blockingGet();
+                Assertions.assertEquals("delta", delta.getName());
+                Assertions.assertTrue(Long.parseLong(delta.getId()) > Long.parseLong(snapshot.getId()));
+            } finally {
+                client.toBlocking().exchange(HttpRequest.DELETE("/api/v1/booking/" + bookingId));
+            }
+        } finally {
+            connection.dispose();
+        }
+    }
+
+    private static List<?> booked(Event<String> delta) throws Exception {
+        Object booked = new ObjectMapper().readValue(delta.getData(), Map.class).get("booked");
+        return booked instanceof List ? (List<?>) booked : List.of();
+    }
+
+    @Test
+    public void testSlowSubscriberIsDisconnected() {
+        LocalDate night = LocalDate.now().plus(27, ChronoUnit.DAYS);
+        // only the snapshot is requested
+        TestSubscriber<Event<String>> subscriber = streamController.streamAvailableDates().test(1);
+        subscriber.awaitCount(1);
+        subscriber.assertValueCount(1).assertNotTerminated();
+
+        // changes from another node, more than the buffer of the subscriber
+        String origin = UUID.randomUUID().toString();
+        for (int i = 1; i <= 2 * (BUFFER_SIZE + 1); i++) {
+            bookingService.onBookingEvents(List.of(BookingEvent.builder()
+                    .bookingId(UUID.randomUUID().toString())
+                    .action(i % 2 == 1 ? BookingAction.BOOK : BookingAction.CANCEL)
+                    .dates(List.of(night))
+                    .origin(origin)
+                    .sequence(i)
+                    .build()));
+        }
+        Assertions.assertTrue(subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS));
+        subscriber.assertError(MissingBackpressureException.class);
+    }
+}
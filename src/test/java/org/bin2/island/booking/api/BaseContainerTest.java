@@ -1,7 +1,13 @@
 package org.bin2.island.booking.api;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 
@@ -14,35 +20,61 @@ import org.testcontainers.utility.DockerImageName;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
 import io.micronaut.test.support.TestPropertyProvider;
 
+/**
+ * the containers are shared by the test classes, each class has a database of its own
+ * so the bookings of a class are not seen by the next one
+ */
 @MicronautTest(environments = "kafka")
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class BaseContainerTest implements TestPropertyProvider {
     private static PostgreSQLContainer postgreSQLContainer;
     private static KafkaContainer kafkaContainer;
+    private static final Set<String> databases = new HashSet<>();
 
     private void init() {
         if (postgreSQLContainer ==null) {
-            postgreSQLContainer = new PostgreSQLContainer("postgres:9.6.12")
+            postgreSQLContainer = new PostgreSQLContainer("postgres:12.8")
                     .withDatabaseName("test")
                     .withUsername("booking")
                     .withPassword("booking");
             postgreSQLContainer.start();
         }
-        Flyway.configure()
-                .dataSource(postgreSQLContainer.getJdbcUrl(), postgreSQLContainer.getUsername(), postgreSQLContainer.getPassword())
-                .load().migrate();
+        if (databases.add(database())) {
+            try (Connection connection = DriverManager.getConnection(postgreSQLContainer.getJdbcUrl(), postgreSQLContainer.getUsername(), postgreSQLContainer.getPassword());
+                 Statement statement = connection.createStatement()) {
+                statement.execute("CREATE DATABASE " + database());
+            } catch (SQLException e) {
+                throw new IllegalStateException("unable to create the database " + database(), e);
+            }
+            Flyway.configure()
+                    .dataSource(jdbcUrl(), postgreSQLContainer.getUsername(), postgreSQLContainer.getPassword())
+                    .load().migrate();
+        }
         if (kafkaContainer==null) {
             kafkaContainer = new KafkaContainer(DockerImageName.parse("confluentinc/cp-kafka"))
                     .withEmbeddedZookeeper();
             kafkaContainer.start();
         }
     }
+
+    private String database() {
+        return getClass().getSimpleName().toLowerCase();
+    }
+
+    private String address() {
+        return postgreSQLContainer.getHost() + ":" + postgreSQLContainer.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT) + "/" + database();
+    }
+
+    private String jdbcUrl() {
+        return "jdbc:postgresql://" + address();
+    }
+
     @Nonnull
     @Override
     public Map<String, String> getProperties() {
         init();
         var properties = new HashMap<String, String>();
-        properties.put("vertx.pg.client.uri", "postgresql://" + postgreSQLContainer.getUsername()+":"+ postgreSQLContainer.getPassword()+"@"+ postgreSQLContainer.getJdbcUrl().substring("jdbc:postgresql://".length()));
+        properties.put("vertx.pg.client.uri", "postgresql://" + postgreSQLContainer.getUsername()+":"+ postgreSQLContainer.getPassword()+"@"+ address());
         properties.put("kafka.bootstrap.servers",kafkaContainer.getBootstrapServers());
         return properties;
     }
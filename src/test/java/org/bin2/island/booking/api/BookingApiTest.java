@@ -5,6 +5,8 @@ import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
@@ -12,10 +14,16 @@ import java.util.stream.Collectors;
 import javax.inject.Inject;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.bin2.island.booking.model.BookingAction;
+import org.bin2.island.booking.model.BookingEvent;
+import org.bin2.island.booking.service.BookingService;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.http.HttpHeaders;
 import io.micronaut.http.HttpRequest;
 import io.micronaut.http.HttpStatus;
 import io.micronaut.http.client.HttpClient;
@@ -26,6 +34,7 @@ import io.micronaut.runtime.server.EmbeddedServer;
 import io.reactivex.Flowable;
 import io.reactivex.schedulers.Schedulers;
 
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 public class BookingApiTest extends BaseContainerTest {
     @Inject
     EmbeddedServer server;
@@ -34,6 +43,9 @@ public class BookingApiTest extends BaseContainerTest {
     @Client("/")
     HttpClient client;
 
+    @Inject
+    BookingService bookingService;
+
     @Test
     @Order(1)
     public void testGetDateAvailableNotArgs() throws Exception {
@@ -48,6 +60,22 @@ public class BookingApiTest extends BaseContainerTest {
         Assertions.assertEquals(expected ,dates);
     }
 
+    @Test
+    @Order(1)
+    public void testReadyAfterWarmup() throws Exception {
+        // the warmup runs on startup, the node is ready once it is done
+        HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+        for (int i = 0; i < 50 && status != HttpStatus.OK; i++) {
+            try {
+                status = client.toBlocking().exchange(HttpRequest.GET("/health/readiness"), String.class).getStatus();
+            } catch (HttpClientResponseException e) {
+                status = e.getStatus();
+                Thread.sleep(200);
+            }
+        }
+        Assertions.assertEquals(HttpStatus.OK, status);
+    }
+
     @Test
     @Order(2)
     public void testGetDateAvailableValidDateRange() throws Exception {
@@ -65,6 +93,33 @@ public class BookingApiTest extends BaseContainerTest {
         Assertions.assertEquals(expected ,dates);
     }
 
+    @Test
+    @Order(2)
+    public void testGetDateAvailableIntervals() throws Exception {
+        // nights no other test books, a single free interval whatever the order of the tests
+        LocalDate from = LocalDate.now().plus(1, ChronoUnit.DAYS);
+        LocalDate to = from.plus(2, ChronoUnit.DAYS);
+        URI uri = UriBuilder.of("/api/v1/booking/available").queryParam("from", from).queryParam("to", to).build();
+
+        var response = client.toBlocking().exchange(HttpRequest.GET(uri)
+                .header(HttpHeaders.ACCEPT, AvailabilityFormat.INTERVALS_JSON), String.class);
+        Assertions.assertEquals(AvailabilityFormat.INTERVALS_JSON, response.getContentType().map(Object::toString).orElse(null));
+        Assertions.assertEquals(List.of(Map.of("from", from.toString(), "to", to.toString())),
+                new ObjectMapper().readValue(response.body(), List.class));
+    }
+
+    @Test
+    @Order(2)
+    public void testGetDateAvailableNotModified() throws Exception {
+        var response = client.toBlocking().exchange(HttpRequest.GET("/api/v1/booking/available"), String.class);
+        String etag = response.getHeaders().get(HttpHeaders.ETAG);
+        Assertions.assertNotNull(etag);
+        var notModified = client.toBlocking().exchange(HttpRequest.GET("/api/v1/booking/available")
+                .header(HttpHeaders.IF_NONE_MATCH, etag), String.class);
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatus());
+        Assertions.assertEquals(etag, notModified.getHeaders().get(HttpHeaders.ETAG));
+    }
+
     @Order(3)
     @Test
     public void testGetDateAvailableInValidDateRange() throws Exception {
@@ -95,6 +150,96 @@ public class BookingApiTest extends BaseContainerTest {
         checkThatDatesAreAvailable(from, to, 2);
     }
 
+    @Order(4)
+    @Test
+    public void testCancelReceivedBeforeItsBook() throws Exception {
+        LocalDate from = LocalDate.now().plus(24, ChronoUnit.DAYS);
+        LocalDate to = from.plus(1, ChronoUnit.DAYS);
+        // the CANCEL of a booking sent by one node is received before its BOOK sent by another node,
+        // the events of two origins are not ordered between them
+        String bookingId = UUID.randomUUID().toString();
+        bookingService.onBookingEvents(List.of(BookingEvent.builder().bookingId(bookingId).action(BookingAction.CANCEL)
+                .dates(List.of(from)).origin(UUID.randomUUID().toString()).sequence(1).build()));
+        bookingService.onBookingEvents(List.of(BookingEvent.builder().bookingId(bookingId).action(BookingAction.BOOK)
+                .dates(List.of(from)).origin(UUID.randomUUID().toString()).sequence(1).build()));
+        checkThatDatesAreAvailable(from, to, 0);
+        // the night is free in the db: it is booked and not rejected from the cache
+        String id = doBooking(from, to);
+        cancelBooking(id);
+        checkThatDatesAreAvailable(from, to, 1);
+    }
+
+    @Order(4)
+    @Test
+    public void testGetBookingAfterUpdate() throws Exception {
+        LocalDate from = LocalDate.now().plus(22, ChronoUnit.DAYS);
+        LocalDate to = from.plus(2, ChronoUnit.DAYS);
+        String bookingId = doBooking(from, to);
+        URI uri = UriBuilder.of("/api/v1/booking/").path(bookingId).build();
+        Map<String, Object> booking = new ObjectMapper().readValue(client.toBlocking().retrieve(uri.toString()), Map.class);
+        Assertions.assertEquals("firstname", booking.get("firstName"));
+        Assertions.assertEquals(List.of(from.toString(), from.plus(1, ChronoUnit.DAYS).toString()), booking.get("dates"));
+        // the update drops the cached booking
+        client.toBlocking().exchange(HttpRequest.PUT(uri.toString(), BookingInfo.builder()
+                .email("testemail@.com")
+                .firstname("updated")
+                .lastname("lastname")
+                .build()));
+        booking = new ObjectMapper().readValue(client.toBlocking().retrieve(uri.toString()), Map.class);
+        Assertions.assertEquals("updated", booking.get("firstName"));
+        cancelBooking(bookingId);
+        HttpClientResponseException e = Assertions.assertThrows(HttpClientResponseException.class, () -> client.toBlocking().retrieve(uri.toString()));
+        Assertions.assertEquals(HttpStatus.NOT_FOUND, e.getStatus());
+    }
+
+    @Order(4)
+    @Test
+    public void testRetryWithIdempotencyKey() throws Exception {
+        LocalDate from = LocalDate.now().plus(10, ChronoUnit.DAYS);
+        LocalDate to = from.plus(2, ChronoUnit.DAYS);
+        String key = UUID.randomUUID().toString();
+        String bookingId = doBooking(from, to, key);
+        // the retry gets the first booking instead of a conflict
+        Assertions.assertEquals(bookingId, doBooking(from, to, key));
+        HttpClientResponseException e = Assertions.assertThrows(HttpClientResponseException.class, () -> doBooking(from, to, UUID.randomUUID().toString()));
+        Assertions.assertEquals(HttpStatus.CONFLICT, e.getStatus());
+        cancelBooking(bookingId);
+    }
+
+    @Order(4)
+    @Test
+    public void testReschedule() throws Exception {
+        LocalDate from = LocalDate.now().plus(13, ChronoUnit.DAYS);
+        String bookingId = doBooking(from, from.plus(2, ChronoUnit.DAYS));
+        String otherId = doBooking(from.plus(5, ChronoUnit.DAYS), from.plus(6, ChronoUnit.DAYS));
+        URI uri = UriBuilder.of("/api/v1/booking/").path(bookingId).path("dates").build();
+        // one night kept, one removed and one added
+        var response = client.toBlocking().exchange(HttpRequest.PATCH(uri.toString(), BookingDates.builder()
+                .startDate(from.plus(1, ChronoUnit.DAYS))
+                .endDate(from.plus(3, ChronoUnit.DAYS))
+                .build()));
+        Assertions.assertEquals(HttpStatus.NO_CONTENT, response.getStatus());
+        checkThatDatesAreAvailable(from, from.plus(1, ChronoUnit.DAYS), 1);
+        checkThatDatesAreAvailable(from.plus(1, ChronoUnit.DAYS), from.plus(3, ChronoUnit.DAYS), 0);
+        // the nights of the other booking are not taken
+        HttpClientResponseException e = Assertions.assertThrows(HttpClientResponseException.class, () ->
+                client.toBlocking().exchange(HttpRequest.PATCH(uri.toString(), BookingDates.builder()
+                        .startDate(from.plus(4, ChronoUnit.DAYS))
+                        .endDate(from.plus(6, ChronoUnit.DAYS))
+                        .build())));
+        Assertions.assertEquals(HttpStatus.CONFLICT, e.getStatus());
+        checkThatDatesAreAvailable(from.plus(1, ChronoUnit.DAYS), from.plus(3, ChronoUnit.DAYS), 0);
+        checkThatDatesAreAvailable(from.plus(4, ChronoUnit.DAYS), from.plus(5, ChronoUnit.DAYS), 1);
+        cancelBooking(bookingId);
+        cancelBooking(otherId);
+        e = Assertions.assertThrows(HttpClientResponseException.class, () ->
+                client.toBlocking().exchange(HttpRequest.PATCH(uri.toString(), BookingDates.builder()
+                        .startDate(from.plus(1, ChronoUnit.DAYS))
+                        .endDate(from.plus(3, ChronoUnit.DAYS))
+                        .build())));
+        Assertions.assertEquals(HttpStatus.NOT_FOUND, e.getStatus());
+    }
+
     private void cancelBooking(String bookingId) {
         URI uri = UriBuilder.of("/api/v1/booking/").path(bookingId).build();
         client.toBlocking().exchange(HttpRequest.DELETE(uri.toString()));
@@ -106,6 +251,10 @@ public class BookingApiTest extends BaseContainerTest {
     }
 
     private String doBooking(LocalDate from, LocalDate to) {
+        return doBooking(from, to, null);
+    }
+
+    private String doBooking(LocalDate from, LocalDate to, String idempotencyKey) {
         URI uri = UriBuilder.of("/api/v1/booking/").build();
         BookingRequest request = BookingRequest.builder()
                 .startDate(from)
@@ -116,7 +265,11 @@ public class BookingApiTest extends BaseContainerTest {
                         .lastname("lastname")
                         .build())
                 .build();
-        return client.toBlocking().retrieve(HttpRequest.POST(uri, request));
+        var post = HttpRequest.POST(uri, request);
+        if (idempotencyKey != null) {
+            post.header(BookingRestApi.IDEMPOTENCY_KEY, idempotencyKey);
+        }
+        return client.toBlocking().retrieve(post);
     }
 
     private void checkThatDatesAreAvailable(LocalDate from, LocalDate to, int nbDays) throws com.fasterxml.jackson.core.JsonProcessingException {
@@ -151,6 +304,8 @@ public class BookingApiTest extends BaseContainerTest {
         //        .map()
         Assertions.assertEquals(nbCalls-1, results.stream().filter(s -> "conflict".equals(s)).count());
         Assertions.assertEquals(1, results.stream().filter(s -> !"conflict".equals(s)).count());
+        // the nights are given back for the next tests
+        results.stream().filter(s -> !"conflict".equals(s)).forEach(this::cancelBooking);
     }
 
     @Test
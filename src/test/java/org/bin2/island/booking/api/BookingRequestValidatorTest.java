@@ -0,0 +1,36 @@
+package org.bin2.island.booking.api;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.List;
+
+import org.bin2.island.booking.service.BookingWindow;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BookingRequestValidatorTest {
+
+    @Test
+    public void testDescribe() {
+        Assertions.assertEquals("1 month", BookingRequestValidator.describe(Period.ofMonths(1)));
+        Assertions.assertEquals("2 weeks", BookingRequestValidator.describe(Period.ofDays(14)));
+        Assertions.assertEquals("1 year 6 months 10 days", BookingRequestValidator.describe(Period.of(1, 6, 10)));
+    }
+
+    @Test
+    public void testTooFarMessageFollowsTheWindow() {
+        BookingRequestValidator validator = new BookingRequestValidator(new BookingWindow("P2M"));
+        LocalDate start = LocalDate.now().plusMonths(3);
+        List<Error> errors = validator.validateBookingDates(new BookingDates(start, start.plusDays(1)));
+        Assertions.assertEquals("should book at least one day before and maximum 2 months in advance", errors.get(0).getMessage());
+    }
+
+    @Test
+    public void testEndDateFollowsTheWindow() {
+        BookingWindow bookingWindow = new BookingWindow("P1M");
+        BookingRequestValidator validator = new BookingRequestValidator(bookingWindow);
+        LocalDate last = bookingWindow.maxDate();
+        Assertions.assertEquals(List.of(), validator.validateBookingDates(new BookingDates(last.minusDays(1), last)));
+        Assertions.assertEquals(1, validator.validateBookingDates(new BookingDates(last, last.plusDays(1))).size());
+    }
+}
@@ -0,0 +1,52 @@
+package org.bin2.island.booking.api;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrencyLimitTest {
+
+    private final AtomicLong recentWait = new AtomicLong();
+    private final ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit(1, 10, 4, Duration.ofMillis(20), recentWait::get);
+
+    @Test
+    public void testRejectsOverTheLimit() {
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertTrue(concurrencyLimit.tryAcquire());
+        }
+        Assertions.assertFalse(concurrencyLimit.tryAcquire());
+        concurrencyLimit.release();
+        Assertions.assertTrue(concurrencyLimit.tryAcquire());
+    }
+
+    @Test
+    public void testGrowsWhenSaturatedWithoutWaiting() {
+        saturateAndRelease();
+        Assertions.assertEquals(5, concurrencyLimit.getLimit());
+        Assertions.assertEquals(0, concurrencyLimit.getInFlight());
+    }
+
+    @Test
+    public void testShrinksWhenThePoolIsSlow() {
+        recentWait.set(Duration.ofMillis(100).toNanos());
+        saturateAndRelease();
+        Assertions.assertEquals(3, concurrencyLimit.getLimit());
+        saturateAndRelease();
+        saturateAndRelease();
+        saturateAndRelease();
+        saturateAndRelease();
+        Assertions.assertEquals(1, concurrencyLimit.getLimit());
+    }
+
+    private void saturateAndRelease() {
+        int limit = concurrencyLimit.getLimit();
+        for (int i = 0; i < limit; i++) {
+            Assertions.assertTrue(concurrencyLimit.tryAcquire());
+        }
+        for (int i = 0; i < limit; i++) {
+            concurrencyLimit.release();
+        }
+    }
+}
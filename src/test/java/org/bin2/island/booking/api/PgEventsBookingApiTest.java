@@ -0,0 +1,19 @@
+package org.bin2.island.booking.api;
+
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+/**
+ * same scenarios as {@link BookingApiTest} with the events sent through postgres NOTIFY instead of kafka
+ */
+public class PgEventsBookingApiTest extends BookingApiTest {
+
+    @Nonnull
+    @Override
+    public Map<String, String> getProperties() {
+        var properties = super.getProperties();
+        properties.put("booking.events.transport", "pg");
+        return properties;
+    }
+}
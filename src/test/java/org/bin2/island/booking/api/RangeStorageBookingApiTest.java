@@ -0,0 +1,19 @@
+package org.bin2.island.booking.api;
+
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+/**
+ * same scenarios as {@link BookingApiTest} with the bookings stored as date ranges
+ */
+public class RangeStorageBookingApiTest extends BookingApiTest {
+
+    @Nonnull
+    @Override
+    public Map<String, String> getProperties() {
+        var properties = super.getProperties();
+        properties.put("booking.storage", "range");
+        return properties;
+    }
+}
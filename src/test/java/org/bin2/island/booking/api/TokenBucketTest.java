@@ -0,0 +1,34 @@
+package org.bin2.island.booking.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstThenRate() {
+        TokenBucket bucket = new TokenBucket(2, 3, 0);
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(0, bucket.tryTake(0));
+        }
+        // 2 tokens per second, the next one is in half a second
+        Assertions.assertEquals(SECOND / 2, bucket.tryTake(0));
+        Assertions.assertEquals(0, bucket.tryTake(SECOND / 2));
+        Assertions.assertTrue(bucket.tryTake(SECOND / 2) > 0);
+    }
+
+    @Test
+    public void testRefillIsCappedByBurst() {
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+        bucket.tryTake(0);
+        bucket.tryTake(0);
+        long later = 60 * SECOND;
+        Assertions.assertEquals(0, bucket.tryTake(later));
+        Assertions.assertEquals(0, bucket.tryTake(later));
+        Assertions.assertTrue(bucket.tryTake(later) > 0);
+    }
+}
@@ -0,0 +1,104 @@
+package org.bin2.island.booking.repository;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.UUID;
+import java.util.function.Function;
+
+import javax.inject.Inject;
+
+import org.bin2.island.booking.api.BaseContainerTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.reactivex.Completable;
+import io.vertx.reactivex.pgclient.PgPool;
+import io.vertx.reactivex.sqlclient.SqlClient;
+import io.vertx.reactivex.sqlclient.Tuple;
+
+/**
+ * partitions of "BOOKING_DATE" on the db, the months used are far after the booking window
+ */
+public class BookingPartitionRepositoryTest extends BaseContainerTest {
+
+    @Inject
+    PgPool client;
+
+    @Inject
+    BookingPartitionRepository partitionRepository;
+
+    @Test
+    public void testMonth() {
+        Assertions.assertEquals(YearMonth.of(2021, 3), BookingPartitionRepository.month("BOOKING_DATE_2021_03"));
+        Assertions.assertEquals("BOOKING_DATE_2021_03", BookingPartitionRepository.name(YearMonth.of(2021, 3)));
+        Assertions.assertNull(BookingPartitionRepository.month("BOOKING_DATE_DEFAULT"));
+        Assertions.assertNull(BookingPartitionRepository.month("BOOKING_DATE_UNPARTITIONED"));
+        Assertions.assertNull(BookingPartitionRepository.month("BOOKING"));
+    }
+
+    @Test
+    public void testCreatePartitionMovesTheNightsOfTheDefaultPartition() {
+        YearMonth month = YearMonth.of(2098, 1);
+        LocalDate night = month.atDay(15);
+        String bookingId = UUID.randomUUID().toString();
+        client.preparedQuery("INSERT INTO \"BOOKING_DATE\" (date, \"bookingId\") VALUES ($1, $2)")
+                .rxExecute(Tuple.of(night, bookingId)).blockingGet();
+        Assertions.assertEquals(1, count("BOOKING_DATE_DEFAULT", night));
+
+        inTransaction(tx -> partitionRepository.createPartition(tx, month));
+
+        Assertions.assertTrue(partitionRepository.partitions(client).toList().blockingGet().contains(month));
+        Assertions.assertEquals(0, count("BOOKING_DATE_DEFAULT", night));
+        Assertions.assertEquals(1, count(BookingPartitionRepository.name(month), night));
+        // the default partition is attached back
+        client.preparedQuery("INSERT INTO \"BOOKING_DATE\" (date, \"bookingId\") VALUES ($1, $2)")
+                .rxExecute(Tuple.of(month.plusMonths(1).atDay(1), bookingId)).blockingGet();
+        Assertions.assertEquals(1, count("BOOKING_DATE_DEFAULT", month.plusMonths(1).atDay(1)));
+
+        client.preparedQuery("DELETE FROM \"BOOKING_DATE\" WHERE \"bookingId\" = $1").rxExecute(Tuple.of(bookingId)).blockingGet();
+        inTransaction(tx -> partitionRepository.archivePartition(tx, month));
+    }
+
+    @Test
+    public void testCreateExistingPartition() {
+        YearMonth month = YearMonth.of(2098, 6);
+        inTransaction(tx -> partitionRepository.createPartition(tx, month));
+        inTransaction(tx -> partitionRepository.createPartition(tx, month));
+        Assertions.assertTrue(partitionRepository.partitions(client).toList().blockingGet().contains(month));
+        inTransaction(tx -> partitionRepository.archivePartition(tx, month));
+    }
+
+    @Test
+    public void testArchivePartition() {
+        YearMonth month = YearMonth.of(2099, 1);
+        LocalDate night = month.atDay(1);
+        inTransaction(tx -> partitionRepository.createPartition(tx, month));
+        client.preparedQuery("INSERT INTO \"BOOKING_DATE\" (date, \"bookingId\") VALUES ($1, $2)")
+                .rxExecute(Tuple.of(night, UUID.randomUUID().toString())).blockingGet();
+
+        inTransaction(tx -> partitionRepository.archivePartition(tx, month));
+
+        Assertions.assertFalse(partitionRepository.partitions(client).toList().blockingGet().contains(month));
+        // the night is no longer read through "BOOKING_DATE" and kept in the archive schema
+        Assertions.assertEquals(0, count("BOOKING_DATE", night));
+        Assertions.assertEquals(1, count(BookingPartitionRepository.ARCHIVE_SCHEMA, BookingPartitionRepository.name(month), night));
+    }
+
+    private long count(String table, LocalDate night) {
+        return count("public", table, night);
+    }
+
+    private long count(String schema, String table, LocalDate night) {
+        return client.preparedQuery("SELECT count(*) AS nights FROM " + schema + ".\"" + table + "\" WHERE date = $1")
+                .rxExecute(Tuple.of(night))
+                .map(rows -> rows.iterator().next().getLong("nights"))
+                .blockingGet();
+    }
+
+    private void inTransaction(Function<SqlClient, Completable> statements) {
+        client.rxBegin().flatMapCompletable(tx -> statements.apply(tx)
+                .andThen(tx.rxCommit())
+                .onErrorResumeNext(e -> tx.rxRollback().onErrorComplete().andThen(Completable.error(e))))
+                .blockingAwait();
+    }
+}
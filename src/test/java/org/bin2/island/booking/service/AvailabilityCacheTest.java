@@ -0,0 +1,68 @@
+package org.bin2.island.booking.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import org.bin2.island.booking.repository.BookingRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.reactivex.Flowable;
+import io.vertx.reactivex.sqlclient.SqlClient;
+
+public class AvailabilityCacheTest {
+
+    private final BookingWindow bookingWindow = new BookingWindow("P1M");
+    private final LocalDate night = bookingWindow.minDate().plusDays(3);
+    /**
+     * booked dates seen by the read pool, a replica that does not follow the patches
+     */
+    private final List<LocalDate> replica = new CopyOnWriteArrayList<>(List.of(night));
+
+    private AvailabilityCache availabilityCache(Duration maxLag) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        BookingRepository repository = new BookingRepository() {
+            @Override
+            public Flowable<LocalDate> bookedDates(SqlClient client, LocalDate from, LocalDate to) {
+                return Flowable.fromIterable(replica);
+            }
+        };
+        ReadPool readPool = new ReadPool(null, new PoolMetrics(registry, "read", 1)) {
+            @Override
+            public <T> Flowable<T> withConnection(Function<SqlClient, Flowable<T>> query) {
+                return query.apply(null);
+            }
+        };
+        return new AvailabilityCache(repository, readPool, bookingWindow, Duration.ofMillis(500), maxLag, registry);
+    }
+
+    @Test
+    public void testReloadKeepsThePatchesTheReplicaHasNotSeen() {
+        AvailabilityCache availabilityCache = availabilityCache(Duration.ofMinutes(1));
+        Assertions.assertTrue(availabilityCache.get().blockingGet().isBooked(night));
+
+        // cancelled on the primary, the replica still has the night booked
+        availabilityCache.patch(List.of(night), false);
+        LocalDate booked = night.plusDays(1);
+        availabilityCache.patch(List.of(booked), true);
+        availabilityCache.refresh();
+
+        AvailabilityIndex index = availabilityCache.get().blockingGet();
+        Assertions.assertFalse(index.isBooked(night));
+        Assertions.assertTrue(index.isBooked(booked));
+    }
+
+    @Test
+    public void testReloadFollowsTheReadPoolAfterMaxLag() throws Exception {
+        AvailabilityCache availabilityCache = availabilityCache(Duration.ofMillis(1));
+        availabilityCache.patch(List.of(night), false);
+        Thread.sleep(20);
+        availabilityCache.refresh();
+
+        Assertions.assertTrue(availabilityCache.get().blockingGet().isBooked(night));
+    }
+}
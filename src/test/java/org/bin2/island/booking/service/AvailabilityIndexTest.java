@@ -0,0 +1,136 @@
+package org.bin2.island.booking.service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.Lists;
+
+public class AvailabilityIndexTest {
+
+    private static final LocalDate FROM = LocalDate.of(2021, 1, 1);
+
+    @Test
+    public void testAvailableDatesSkipsBookedDays() {
+        AvailabilityIndex index = AvailabilityIndex.builder(FROM, FROM.plusDays(99))
+                .book(FROM.plusDays(1))
+                .book(FROM.plusDays(63))
+                .book(FROM.plusDays(64))
+                .build(1);
+        List<LocalDate> expected = FROM.datesUntil(FROM.plusDays(100))
+                .filter(d -> !d.equals(FROM.plusDays(1)) && !d.equals(FROM.plusDays(63)) && !d.equals(FROM.plusDays(64)))
+                .collect(Collectors.toList());
+        Assertions.assertEquals(expected, Lists.newArrayList(index.availableDates(FROM, FROM.plusDays(100))));
+        Assertions.assertTrue(index.isBooked(FROM.plusDays(63)));
+        Assertions.assertFalse(index.isBooked(FROM.plusDays(2)));
+        Assertions.assertEquals(1, index.getVersion());
+    }
+
+    @Test
+    public void testFullyBookedWords() {
+        AvailabilityIndex.Builder builder = AvailabilityIndex.builder(FROM, FROM.plusDays(199));
+        FROM.datesUntil(FROM.plusDays(150)).forEach(builder::book);
+        AvailabilityIndex index = builder.build(1);
+        Assertions.assertEquals(FROM.plusDays(150).toEpochDay(), index.nextAvailable(FROM.toEpochDay(), FROM.plusDays(200).toEpochDay()));
+        Assertions.assertEquals(-1, index.nextAvailable(FROM.toEpochDay(), FROM.plusDays(150).toEpochDay()));
+    }
+
+    @Test
+    public void testDaysOutsideTheWindowAreAvailable() {
+        AvailabilityIndex index = AvailabilityIndex.builder(FROM, FROM.plusDays(2))
+                .book(FROM)
+                .book(FROM.plusDays(1))
+                .book(FROM.plusDays(2))
+                .book(FROM.plusDays(3))
+                .build(1);
+        Assertions.assertEquals(Lists.newArrayList(FROM.minusDays(1), FROM.plusDays(3), FROM.plusDays(4)),
+                Lists.newArrayList(index.availableDates(FROM.minusDays(1), FROM.plusDays(5))));
+    }
+
+    @Test
+    public void testPatchDoesNotChangeTheOriginalIndex() {
+        AvailabilityIndex index = AvailabilityIndex.builder(FROM, FROM.plusDays(9))
+                .book(FROM.plusDays(2))
+                .build(1);
+        AvailabilityIndex patched = index.patch(List.of(FROM.plusDays(2), FROM.plusDays(3)), false, 2)
+                .patch(List.of(FROM.plusDays(5), FROM.plusDays(20)), true, 3);
+        Assertions.assertTrue(index.isBooked(FROM.plusDays(2)));
+        Assertions.assertFalse(patched.isBooked(FROM.plusDays(2)));
+        Assertions.assertFalse(patched.isBooked(FROM.plusDays(3)));
+        Assertions.assertTrue(patched.isBooked(FROM.plusDays(5)));
+        Assertions.assertFalse(patched.isBooked(FROM.plusDays(20)));
+        Assertions.assertEquals(3, patched.getVersion());
+    }
+
+    @Test
+    public void testNightsBookedByAnotherNodeAreUnconfirmed() {
+        LocalDate night = FROM.plusDays(5);
+        AvailabilityIndex index = AvailabilityIndex.builder(FROM, FROM.plusDays(99)).book(FROM).build(1)
+                .patch(List.of(night), List.of(), false, 2);
+        Assertions.assertTrue(index.isBooked(night.toEpochDay()));
+        Assertions.assertTrue(index.isUnconfirmed(night.toEpochDay()));
+        // loaded from the db
+        Assertions.assertFalse(index.isUnconfirmed(FROM.toEpochDay()));
+        Assertions.assertTrue(index.shift(FROM.plusDays(1), FROM.plusDays(100), 3).isUnconfirmed(night.toEpochDay()));
+
+        AvailabilityIndex confirmed = index.confirm(List.of(night), 3);
+        Assertions.assertTrue(confirmed.isBooked(night.toEpochDay()));
+        Assertions.assertFalse(confirmed.isUnconfirmed(night.toEpochDay()));
+        // booked again by this node, or released
+        Assertions.assertFalse(index.patch(List.of(night), List.of(), 3).isUnconfirmed(night.toEpochDay()));
+        Assertions.assertFalse(index.patch(List.of(), List.of(night), false, 3).isUnconfirmed(night.toEpochDay()));
+    }
+
+    @Test
+    public void testShiftKeepsTheOverlappingDays() {
+        AvailabilityIndex index = AvailabilityIndex.builder(FROM, FROM.plusDays(9))
+                .book(FROM)
+                .book(FROM.plusDays(5))
+                .book(FROM.plusDays(9))
+                .build(1);
+        AvailabilityIndex shifted = index.shift(FROM.plusDays(1), FROM.plusDays(10), 2);
+        Assertions.assertEquals(FROM.plusDays(1).toEpochDay(), shifted.getStartDay());
+        Assertions.assertEquals(10, shifted.getLength());
+        Assertions.assertFalse(shifted.isBooked(FROM));
+        Assertions.assertTrue(shifted.isBooked(FROM.plusDays(5)));
+        Assertions.assertTrue(shifted.isBooked(FROM.plusDays(9)));
+        Assertions.assertFalse(shifted.isBooked(FROM.plusDays(10)));
+    }
+
+    @Test
+    public void testNextBooked() {
+        AvailabilityIndex index = AvailabilityIndex.builder(FROM, FROM.plusDays(199))
+                .book(FROM.plusDays(130))
+                .build(1);
+        Assertions.assertEquals(FROM.plusDays(130).toEpochDay(), index.nextBooked(FROM.minusDays(10).toEpochDay(), FROM.plusDays(300).toEpochDay()));
+        Assertions.assertEquals(-1, index.nextBooked(FROM.toEpochDay(), FROM.plusDays(130).toEpochDay()));
+        Assertions.assertEquals(-1, index.nextBooked(FROM.plusDays(131).toEpochDay(), FROM.plusDays(300).toEpochDay()));
+    }
+
+    @Test
+    public void testAvailableBitmap() {
+        AvailabilityIndex index = AvailabilityIndex.builder(FROM, FROM.plusDays(99))
+                .book(FROM.plusDays(1))
+                .book(FROM.plusDays(8))
+                .build(1);
+        // 10 nights: 2 bytes, the bits after the last night are not set
+        byte[] bitmap = index.availableBitmap(FROM, FROM.plusDays(10));
+        Assertions.assertArrayEquals(new byte[]{(byte) 0b11111101, 0b10}, bitmap);
+        Assertions.assertEquals(0, index.availableBitmap(FROM, FROM).length);
+    }
+
+    @Test
+    public void testBookedSince() {
+        AvailabilityIndex index = AvailabilityIndex.builder(FROM, FROM.plusDays(99))
+                .book(FROM.plusDays(1))
+                .book(FROM.plusDays(70))
+                .build(1);
+        AvailabilityIndex patched = index.patch(List.of(FROM.plusDays(1)), false, 2)
+                .patch(List.of(FROM.plusDays(3), FROM.plusDays(80)), true, 3);
+        Assertions.assertEquals(List.of(FROM.plusDays(3), FROM.plusDays(80)), patched.bookedSince(index));
+        Assertions.assertEquals(List.of(FROM.plusDays(1)), index.bookedSince(patched));
+    }
+}
@@ -0,0 +1,50 @@
+package org.bin2.island.booking.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.reactivex.Maybe;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.MaybeSubject;
+import org.bin2.island.booking.model.Booking;
+
+public class BookingCacheTest {
+
+    private final BookingCache bookingCache = new BookingCache(10, Duration.ofMinutes(1));
+
+    @Test
+    public void testConcurrentReadsShareOneLoad() {
+        MaybeSubject<Booking> load = MaybeSubject.create();
+        AtomicInteger loads = new AtomicInteger();
+        TestObserver<Booking> first = bookingCache.get("1", id -> { loads.incrementAndGet(); return load; }).test();
+        TestObserver<Booking> second = bookingCache.get("1", id -> { loads.incrementAndGet(); return load; }).test();
+
+        Booking booking = Booking.builder().id("1").build();
+        load.onSuccess(booking);
+        first.assertValue(booking);
+        second.assertValue(booking);
+        bookingCache.get("1", id -> Maybe.error(new IllegalStateException())).test().assertValue(booking);
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testMissingBookingIsNotKept() {
+        bookingCache.get("1", id -> Maybe.empty()).test().assertComplete().assertNoValues();
+        Booking booking = Booking.builder().id("1").build();
+        bookingCache.get("1", id -> Maybe.just(booking)).test().assertValue(booking);
+    }
+
+    @Test
+    public void testInvalidateDropsTheLoadInFlight() {
+        MaybeSubject<Booking> load = MaybeSubject.create();
+        bookingCache.get("1", id -> load).test();
+        bookingCache.invalidate("1");
+        load.onSuccess(Booking.builder().id("1").firstName("outdated").build());
+
+        Booking booking = Booking.builder().id("1").firstName("updated").build();
+        bookingCache.get("1", id -> Maybe.just(booking)).test().assertValue(booking);
+    }
+}
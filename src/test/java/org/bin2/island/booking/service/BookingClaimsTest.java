@@ -0,0 +1,51 @@
+package org.bin2.island.booking.service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.reactivex.Maybe;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.MaybeSubject;
+
+public class BookingClaimsTest {
+
+    private static final LocalDate FROM = LocalDate.of(2021, 1, 1);
+
+    private final BookingClaims bookingClaims = new BookingClaims();
+
+    @Test
+    public void testOverlappingAttemptFailsFastWhenTheFirstOneBooks() {
+        MaybeSubject<String> first = MaybeSubject.create();
+        AtomicInteger secondCalls = new AtomicInteger();
+        TestObserver<String> firstResult = bookingClaims.claim(List.of(FROM, FROM.plusDays(1)), first).test();
+        TestObserver<String> secondResult = bookingClaims.claim(List.of(FROM.plusDays(1), FROM.plusDays(2)),
+                Maybe.fromCallable(() -> "second" + secondCalls.incrementAndGet())).test();
+        secondResult.assertNotComplete();
+
+        first.onSuccess("first");
+        firstResult.assertValue("first");
+        secondResult.assertComplete().assertNoValues();
+        Assertions.assertEquals(0, secondCalls.get());
+    }
+
+    @Test
+    public void testOverlappingAttemptRetriesWhenTheFirstOneFails() {
+        MaybeSubject<String> first = MaybeSubject.create();
+        bookingClaims.claim(List.of(FROM), first).test();
+        TestObserver<String> secondResult = bookingClaims.claim(List.of(FROM), Maybe.just("second")).test();
+        secondResult.assertNotComplete();
+
+        first.onComplete();
+        secondResult.assertValue("second");
+    }
+
+    @Test
+    public void testDisjointAttemptsDoNotWait() {
+        bookingClaims.claim(List.of(FROM), MaybeSubject.<String>create()).test();
+        bookingClaims.claim(List.of(FROM.plusDays(1)), Maybe.just("second")).test().assertValue("second");
+    }
+}
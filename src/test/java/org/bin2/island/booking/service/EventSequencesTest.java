@@ -0,0 +1,33 @@
+package org.bin2.island.booking.service;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class EventSequencesTest {
+
+    @Test
+    public void testFirstEventOfAnOriginIsNotAGap() {
+        EventSequences sequences = new EventSequences(Duration.ofMinutes(1));
+        // a node started before this one already sent 41 events
+        Assertions.assertTrue(sequences.next("origin", 42));
+        Assertions.assertTrue(sequences.next("origin", 43));
+        Assertions.assertFalse(sequences.next("origin", 45));
+        Assertions.assertTrue(sequences.next("origin", 46));
+        Assertions.assertTrue(sequences.next("other", 7));
+    }
+
+    @Test
+    public void testIdleOriginsAreEvicted() throws Exception {
+        EventSequences sequences = new EventSequences(Duration.ofMillis(200));
+        sequences.next("origin", 1);
+        sequences.next("other", 1);
+        Thread.sleep(300);
+        sequences.next("other", 2);
+        sequences.evictIdle();
+        Assertions.assertEquals(1, sequences.size());
+        // a forgotten origin starts again with its next event
+        Assertions.assertTrue(sequences.next("origin", 10));
+    }
+}
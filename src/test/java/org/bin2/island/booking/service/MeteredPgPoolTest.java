@@ -0,0 +1,74 @@
+package org.bin2.island.booking.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PreparedQuery;
+import io.vertx.sqlclient.Query;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Transaction;
+
+public class MeteredPgPoolTest {
+
+    /**
+     * a pool answering after 20ms
+     */
+    private final PgPool slowPool = new PgPool() {
+        @Override
+        public void getConnection(Handler<AsyncResult<SqlConnection>> handler) {
+            sleep();
+            handler.handle(Future.succeededFuture());
+        }
+
+        @Override
+        public void begin(Handler<AsyncResult<Transaction>> handler) {
+            sleep();
+            handler.handle(Future.succeededFuture());
+        }
+
+        @Override
+        public Query<RowSet<Row>> query(String sql) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public PreparedQuery<RowSet<Row>> preparedQuery(String sql) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void sleep() {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+
+    @Test
+    public void testEveryAcquisitionFeedsTheRecentWait() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PoolMetrics metrics = new PoolMetrics(registry, "write", 1);
+        MeteredPgPool pool = new MeteredPgPool(slowPool, metrics);
+
+        pool.getConnection(connection -> {
+        });
+        pool.begin(tx -> {
+        });
+
+        Assertions.assertEquals(2, registry.get("booking.pool.wait").timer().count());
+        Assertions.assertEquals(0, registry.get("booking.pool.pending").gauge().value());
+        Assertions.assertTrue(metrics.getRecentWait() > 0);
+    }
+}